@@ -1,10 +1,16 @@
 package glitchy.core;
 
 import glitchy.core.imageProcessing.ImageController;
+import glitchy.core.imageProcessing.ImageRenderer;
+import glitchy.core.imageProcessing.PixelBuffer;
+import glitchy.core.imageProcessing.PixelBuffers;
 import glitchy.core.imageProcessing.PixelStream;
 import glitchy.core.imageProcessing.RenderProperties;
 import glitchy.core.io.IOController;
-import glitchy.core.effects.Effect;
+import glitchy.core.io.RawFormat;
+import glitchy.core.effects.EffectController;
+import glitchy.core.effects.EffectMonitor;
+import glitchy.core.effects.EffectProvider;
 import glitchy.gui.GuiController;
 
 import java.awt.image.BufferedImage;
@@ -41,6 +47,16 @@ public class CoreController {
 	 */
 	private ActionHistory history;
 
+	/**
+	 * Runs effects, imports and exports in the background, and renders the image.
+	 */
+	private JobScheduler scheduler;
+
+	/**
+	 * Key for jobs that import layers, such that they are added in the order they were requested.
+	 */
+	private static final Object IMPORT = new Object();
+
 	/**
 	 * Flag, determines whether an image is the first to be loaded.
 	 */
@@ -53,7 +69,41 @@ public class CoreController {
 		imageController = new ImageController();
 		ioController = new IOController();
 		config = new Config();
+		
+		//Layers from this size and up are kept off-heap
+		String offHeapThreshold = config.getParamaters().get("offheapthreshold");
+		if(offHeapThreshold != null)
+			PixelBuffers.setOffHeapThreshold(Long.parseLong(offHeapThreshold));
+		
+		//Memory each layer may spend on effect checkpoints, in megabytes
+		String checkpointBudget = config.getParamaters().get("checkpointbudget");
+		if(checkpointBudget != null)
+			EffectController.setCheckpointBudget(Long.parseLong(checkpointBudget) * (1 << 20) / 4);
+		
+		//Split effects across every core, unless turned off
+		String parallelEffects = config.getParamaters().get("paralleleffects");
+		if(parallelEffects != null)
+			EffectController.setParallel(Boolean.parseBoolean(parallelEffects));
+		
+		//Rebuild changed layers at once, unless turned off
+		String parallelLayers = config.getParamaters().get("parallellayers");
+		if(parallelLayers != null)
+			ImageController.setParallel(Boolean.parseBoolean(parallelLayers));
+		
+		//Merge layers on every core, unless turned off
+		String parallelRender = config.getParamaters().get("parallelrender");
+		if(parallelRender != null)
+			ImageRenderer.setParallel(Boolean.parseBoolean(parallelRender));
+		
+		//Merge runs of pixels at once, unless turned off
+		String renderKernels = config.getParamaters().get("renderkernels");
+		if(renderKernels != null)
+			ImageRenderer.setKernels(Boolean.parseBoolean(renderKernels));
+		
 		guiController = new GuiController(config, this);
+		scheduler = new JobScheduler(
+				() -> imageController.render(guiController.getRenderProperties()),
+				rendered -> guiController.updateCanvas(rendered));
 		history = new ActionHistory(this);
 	}
 	
@@ -67,10 +117,12 @@ public class CoreController {
 		String message = "Duplicate selection: " + pixelStream.getSelectionS() + " to " + pixelStream.getSelectionE() + " from " + pixelStream.getTitle();
 		saveActionUndo(message, Action.CHANGE_STREAM, pixelStream);
 		
-		PixelStream copy = imageController.copySelectionToNewLayer(pixelStream);
-		
-		guiController.addLayer(copy);
-		updateImage();
+		scheduler.submit(() -> {
+			PixelStream copy = imageController.copySelectionToNewLayer(pixelStream);
+			
+			guiController.addLayer(copy);
+			updateImage();
+		}, pixelStream);
 	}
 	
 	/**
@@ -83,10 +135,12 @@ public class CoreController {
 		String message = "Extracting selection: " + pixelStream.getSelectionS() + " to " + pixelStream.getSelectionE() + " from " + pixelStream.getTitle();
 		saveActionUndo(message, Action.CHANGE_STREAM, pixelStream);
 		
-		PixelStream copy = imageController.cutSelectionToNewLayer(pixelStream);
-		
-		guiController.addLayer(copy);
-		updateImage();
+		scheduler.submit(() -> {
+			PixelStream copy = imageController.cutSelectionToNewLayer(pixelStream);
+			
+			guiController.addLayer(copy);
+			updateImage();
+		}, pixelStream);
 	}
 	
 	/**
@@ -128,40 +182,29 @@ public class CoreController {
 		config.saveParameter("lastpathimport", path);
 		config.saveConfig();
 
-		new Thread(){
-			@Override
-			public void run() {
-				BufferedImage img = ioController.getImage(path);
-
-				if(img == null){
-					guiController.stopLoading();
-					guiController.errorMessage("Could not load image: " + path);
-					return;
-				}
-
-				String title = path.substring(path.lastIndexOf('\\')+1);
-				PixelStream pixelStream = imageController.addImage(title, img);
+		guiController.startLoading("Importing image...");
 
-				if(first)
-					firstImage(pixelStream);
+		scheduler.submit(() -> {
+			BufferedImage img = ioController.getImage(path);
 
+			if(img == null){
 				guiController.stopLoading();
-				guiController.addLayer(pixelStream);
-				updateImage();
-
-				saveAction("Imported image: " + title);
-				
-				//dispose of this thread when done
-				try {
-					join();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
+				guiController.errorMessage("Could not load image: " + path);
+				return;
 			}
 
-		}.start();
+			String title = path.substring(path.lastIndexOf('\\')+1);
+			PixelStream pixelStream = imageController.addImage(title, img);
 
-		guiController.startLoading("Importing image...");
+			if(first)
+				firstImage(pixelStream);
+
+			guiController.stopLoading();
+			guiController.addLayer(pixelStream);
+			updateImage();
+
+			saveAction("Imported image: " + title);
+		}, IMPORT);
 	}
 	
 	/**
@@ -197,41 +240,58 @@ public class CoreController {
 	 * and converts its raw data into pixels, that are then 
 	 * added to a PixelStream.
 	 * @param path Filepath.
-	 * @param alpha whether the user wants alpha or not
+	 * @param format Layout of the pixels in the file.
+	 * @param inMemory Whether to convert every pixel into memory at once, 
+	 * rather than reading pixels from the file as they are needed.
 	 */
-	public void loadRaw(String path,boolean alpha){
+	public void loadRaw(String path,RawFormat format,boolean inMemory){
 
 		config.saveParameter("lastpathraw", path);
 		config.saveConfig();
 
-		new Thread(){
-			@Override
-			public void run() {
-				String title = path.substring(path.lastIndexOf('\\')+1);				
+		guiController.startLoading("Importing raw...");
+
+		scheduler.submit(() -> {
+			String title = path.substring(path.lastIndexOf('\\')+1);				
 
-				int[] convertedRaw = ioController.readRaw(path,alpha);
+			//Pixels stay in the file, until effects write to them. 
+			//Opening reads nothing, so the length is checked before any pixel is loaded.
+			PixelBuffer convertedRaw = ioController.openRaw(path,format);
 
-				PixelStream pixelStream = imageController.addRaw(title,convertedRaw,alpha);
+			if(convertedRaw == null){
+				guiController.stopLoading();
+				guiController.errorMessage("Could not load raw: " + path);
+				return;
+			}
+
+			if(convertedRaw.length() > PixelStream.MAX_LENGTH){
+				guiController.stopLoading();
+				guiController.errorMessage("Too many pixels in " + title + ": " + convertedRaw.length() 
+						+ ". A layer holds at most " + PixelStream.MAX_LENGTH + ". Import a slice of the file, with offset and length.");
+				return;
+			}
 
-				if(first)
-					firstImage(pixelStream);
+			//The mapped file is only kept if the pixels are not loaded into memory
+			if(inMemory)
+				convertedRaw = ioController.readRaw(path,format);
 
+			if(convertedRaw == null){
 				guiController.stopLoading();
-				guiController.addLayer(pixelStream);
-				updateImage();
-
-				saveAction("Imported raw: " + title);
-				
-				//Dispose of this thread when done
-				try {
-					join();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
+				guiController.errorMessage("Could not load raw: " + path);
+				return;
 			}
-		}.start();
 
-		guiController.startLoading("Importing raw...");
+			PixelStream pixelStream = imageController.addRaw(title,convertedRaw,format.hasAlpha());
+
+			if(first)
+				firstImage(pixelStream);
+
+			guiController.stopLoading();
+			guiController.addLayer(pixelStream);
+			updateImage();
+
+			saveAction("Imported raw: " + title);
+		}, IMPORT);
 	}
 	
 	/**
@@ -256,35 +316,40 @@ public class CoreController {
 	}
 	
 	/**
-	 * Starts a thread, that tells the ImageController to apply the 
-	 * desired effect to the desired PixelStream.
+	 * Schedules a job, that tells the ImageController to apply the 
+	 * desired effect to the desired PixelStream. 
+	 * Effects on the same PixelStream are applied one at a time, in order. 
+	 * The loading bar shows the effect's progress, and can cancel it.
 	 * @param pixelStream The PixelStream.
-	 * @param effect The desired Effect
+	 * @param name Name of the desired Effect, e.g. "sort".
 	 * @param modifiers Modifiers for the Effect.
 	 */
-	public void requestEffect(PixelStream pixelStream, Effect effect, int[] modifiers) {
-		String message = "Applying " + effect.toString() + " to " + pixelStream.getTitle();
+	public void requestEffect(PixelStream pixelStream, String name, int[] modifiers) {
+		EffectProvider provider = EffectController.getProvider(name);
+		
+		if(provider == null){
+			guiController.errorMessage("Unknown effect: " + name);
+			return;
+		}
+		
+		String effect = provider.getDisplayName();
+		String message = "Applying " + effect + " to " + pixelStream.getTitle();
 		saveActionUndo(message, Action.CHANGE_STREAM, pixelStream);
-		new Thread(){
-			@Override
-			public void run() {
-				imageController.applyEffect(pixelStream, effect, modifiers);
-				
-				guiController.stopLoading();
-				guiController.populateProperties(pixelStream);				
-				
-				updateImage();
-				
-				//Dispose of this thread when done
-				try {
-					join();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-		}.start();
+		EffectMonitor monitor = new EffectMonitor(progress -> guiController.setProgress(progress));
+		guiController.startLoading(message, () -> monitor.cancel());
 		
-		guiController.startLoading(message);
+		scheduler.submit(() -> {
+			boolean applied = imageController.applyEffect(pixelStream, name, modifiers, monitor);
+			
+			guiController.stopLoading();
+			
+			if(!applied)
+				saveAction("Cancelled " + effect + " on " + pixelStream.getTitle());
+			
+			guiController.populateProperties(pixelStream);				
+			
+			updateImage();
+		}, pixelStream);
 	}
 
 	/**
@@ -341,7 +406,7 @@ public class CoreController {
 	}
 	
 	/**
-	 * Starts a thread, that first tells the ImageController to render 
+	 * Schedules a job, that first tells the ImageController to render 
 	 * and image, based on renderingproperties and specified imageformat.  
 	 * Then tells the IOController to save the image to the specified filepath.
 	 * @param path Filepath
@@ -352,27 +417,63 @@ public class CoreController {
 		String message = "Exporting image: " + title;
 		saveAction(message);
 		
-		new Thread() {
+		guiController.startLoading(message);
+		
+		scheduler.submit(() -> {
+			BufferedImage img = imageController.render(guiController.getRenderProperties(),extension);
+			boolean success = ioController.exportImage(img , path, extension);
+			if(!success)
+				guiController.errorMessage("Failed to save image: " + path);
 			
-			public void run() {
-				BufferedImage img = imageController.render(guiController.getRenderProperties(),extension);
-				boolean success = ioController.exportImage(img , path, extension);
-				if(!success)
-					guiController.errorMessage("Failed to save image: " + path);
-				
-				guiController.stopLoading();
-				
-				//Dispose of this thread when done
-				try {
-					join();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
+			guiController.stopLoading();
+		});
+	}
+	
+	/**
+	 * Exports a layer, or the rendered image, as raw bytes. 
+	 * The rendered image is written while it is held, without being copied. 
+	 * Refuses to write to a raw file that a layer is still read from.
+	 * @param path Where to export the raw.
+	 * @param format Layout of the pixels in the file.
+	 * @param pixelStream Layer to export, or null for the rendered image.
+	 */
+	public void saveRaw(String path, RawFormat format, PixelStream pixelStream){
+		String title = path.substring(path.lastIndexOf('\\')+1);
+		
+		//Mapped layers would change along with the file, or block it from being replaced
+		for(PixelStream stream : imageController.snapshot()){
+			if(ioController.readsFrom(stream.getOriginalPixels(), path)){
+				guiController.errorMessage("Cannot export to " + title + ", as the layer " 
+						+ stream.getTitle() + " is read from it. Export to another file.");
+				return;
 			}
-			
-		}.start();
+		}
+		
+		String message = "Exporting raw: " + title;
+		saveAction(message);
 		
 		guiController.startLoading(message);
+		
+		Runnable job = () -> {
+			boolean success;
+			
+			if(pixelStream != null)
+				success = ioController.exportRaw(pixelStream.getPixels(), path, format);
+			else
+				success = imageController.renderPixels(guiController.getRenderProperties(), 
+						pixels -> ioController.exportRaw(pixels, path, format));
+			
+			if(!success)
+				guiController.errorMessage("Failed to save raw: " + path);
+			
+			guiController.stopLoading();
+		};
+		
+		//Waits for any job on the exported layers to finish
+		if(pixelStream != null)
+			scheduler.submit(job, pixelStream);
+		else
+			scheduler.submit(job, imageController.snapshot());
 	}
 	
 	/**
@@ -425,35 +526,23 @@ public class CoreController {
 	 * @param message the message for the loadingbar 
 	 */
 	public void updateEffects(String message) {
-		new Thread() {
-			
-			public void run() {
-				
-				imageController.checkPixelStreams();
-				updateImage();
-				
-				guiController.stopLoading();
-				
-				//Dispose of this thread when done
-				try {
-					join();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-			
-		}.start();
-		
 		guiController.startLoading(message);
+		
+		//Waits for any job on the layers to finish, before rebuilding them
+		scheduler.submit(() -> {
+			imageController.checkPixelStreams();
+			updateImage();
+			
+			guiController.stopLoading();
+		}, imageController.snapshot());
 	}
 	
 	/**
-	 * Tells ImageController to render an image, and passes it to the GuiController.
+	 * Requests that ImageController renders an image, and passes it to the GuiController.
+	 * Requests made while a render is pending are merged, such that only the newest image is rendered.
 	 */
 	public void updateImage() {
-		BufferedImage rendered = imageController.render(guiController.getRenderProperties());
-		guiController.updateCanvas(rendered);
-		System.gc();
+		scheduler.requestRender();
 	}
 
 }
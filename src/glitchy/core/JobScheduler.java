@@ -0,0 +1,190 @@
+package glitchy.core;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs background jobs, and renders the image.
+ * Jobs are given keys, typically the PixelStreams they modify. Jobs sharing a key
+ * run one at a time, in the order they were submitted, while other jobs run concurrently.
+ * Renders run on a single thread, and requests made while a render is pending
+ * are coalesced, such that only the newest image is rendered and published.
+ * @author Aksel
+ */
+public class JobScheduler {
+
+	/**
+	 * A job, and the keys it must hold while running.
+	 */
+	private static class Job {
+		final Runnable task;
+		final Collection<?> keys;
+
+		Job(Runnable task, Collection<?> keys) {
+			this.task = task;
+			this.keys = keys;
+		}
+	}
+
+	/**
+	 * Threads that run jobs.
+	 */
+	private final ExecutorService jobExecutor;
+
+	/**
+	 * The thread that renders.
+	 */
+	private final ExecutorService renderExecutor;
+
+	/**
+	 * Jobs waiting for their keys, in the order they were submitted.
+	 */
+	private final ArrayList<Job> waiting = new ArrayList<>();
+
+	/**
+	 * Keys held by running jobs.
+	 */
+	private final HashSet<Object> busy = new HashSet<>();
+
+	/**
+	 * Whether a render has been requested, but not yet started.
+	 */
+	private final AtomicBoolean renderPending = new AtomicBoolean();
+
+	/**
+	 * Renders an image.
+	 */
+	private final Supplier<BufferedImage> renderer;
+
+	/**
+	 * Receives rendered images, on the event dispatch thread.
+	 */
+	private final Consumer<BufferedImage> publisher;
+
+	/**
+	 * Creates a JobScheduler.
+	 * @param renderer Renders an image.
+	 * @param publisher Receives rendered images, on the event dispatch thread.
+	 */
+	public JobScheduler(Supplier<BufferedImage> renderer, Consumer<BufferedImage> publisher) {
+		this.renderer = renderer;
+		this.publisher = publisher;
+
+		jobExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemonThreads("Glitchy job"));
+		renderExecutor = Executors.newSingleThreadExecutor(daemonThreads("Glitchy render"));
+	}
+
+	/**
+	 * Submits a job. It runs once no earlier job holding any of the same keys is waiting or running.
+	 * @param task The job.
+	 * @param keys Keys, e.g. the PixelStreams the job modifies.
+	 */
+	public void submit(Runnable task, Object... keys) {
+		submit(task, Arrays.asList(keys));
+	}
+
+	/**
+	 * Submits a job. It runs once no earlier job holding any of the same keys is waiting or running.
+	 * @param task The job.
+	 * @param keys Keys, e.g. the PixelStreams the job modifies.
+	 */
+	public synchronized void submit(Runnable task, Collection<?> keys) {
+		waiting.add(new Job(task, new ArrayList<>(keys)));
+		startJobs();
+	}
+
+	/**
+	 * Requests a render. If a render is already pending, this request is merged into it.
+	 */
+	public void requestRender() {
+		if(renderPending.compareAndSet(false, true))
+			renderExecutor.execute(this::render);
+	}
+
+	/**
+	 * Renders the newest image, and publishes it on the event dispatch thread.
+	 */
+	private void render() {
+		//Requests from now on need another render
+		renderPending.set(false);
+
+		BufferedImage img;
+		try {
+			img = renderer.get();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		SwingUtilities.invokeLater(() -> publisher.accept(img));
+	}
+
+	/**
+	 * Starts every waiting job whose keys are free, and not claimed by an earlier waiting job.
+	 */
+	private synchronized void startJobs() {
+		HashSet<Object> claimed = new HashSet<>(busy);
+
+		Iterator<Job> it = waiting.iterator();
+		while(it.hasNext()) {
+			Job job = it.next();
+
+			boolean free = true;
+			for(Object key : job.keys)
+				if(claimed.contains(key))
+					free = false;
+
+			claimed.addAll(job.keys);
+
+			if(!free)
+				continue;
+
+			it.remove();
+			busy.addAll(job.keys);
+
+			jobExecutor.execute(() -> run(job));
+		}
+	}
+
+	/**
+	 * Runs a job, and releases its keys afterwards.
+	 * @param job The job.
+	 */
+	private void run(Job job) {
+		try {
+			job.task.run();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		} finally {
+			synchronized(this) {
+				busy.removeAll(job.keys);
+				startJobs();
+			}
+		}
+	}
+
+	/**
+	 * Creates daemon threads, such that they do not keep the program running.
+	 * @param name Thread name.
+	 * @return ThreadFactory.
+	 */
+	private static ThreadFactory daemonThreads(String name) {
+		return r -> {
+			Thread t = new Thread(r, name);
+			t.setDaemon(true);
+			return t;
+		};
+	}
+}
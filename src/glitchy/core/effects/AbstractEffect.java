@@ -24,7 +24,38 @@ public abstract class AbstractEffect implements Serializable{
 	 * Applies an effect to the PixelStream.
 	 * @param pixelStream PixelStream to apply effect to.
 	 */
-	public abstract void applyEffect(PixelStream pixelStream);
+	public void applyEffect(PixelStream pixelStream){
+		applyEffect(pixelStream, EffectMonitor.NONE);
+	}
+	
+	/**
+	 * Applies an effect to the PixelStream, reporting progress to the monitor 
+	 * every chunk of pixels. If the monitor is cancelled, the effect stops part way, 
+	 * leaving the pixels partially modified.
+	 * @param pixelStream PixelStream to apply effect to.
+	 * @param monitor Receives progress, and may cancel the effect.
+	 * @throws EffectCancelledException If the monitor was cancelled.
+	 */
+	public abstract void applyEffect(PixelStream pixelStream, EffectMonitor monitor);
+	
+	/**
+	 * Returns this effect as a ChannelTransform, if it is pointwise, i.e. each 
+	 * pixel's result only depends on that pixel's channels. 
+	 * Runs of pointwise effects are fused into a single pass over the pixels.
+	 * @return Transform, or null if the effect is not pointwise.
+	 */
+	ChannelTransform getChannelTransform(){
+		return null;
+	}
+	
+	/**
+	 * Returns how this effect reads pixels, with its current modifiers. 
+	 * Effects are global unless they say otherwise.
+	 * @return Access pattern.
+	 */
+	public AccessPattern getAccessPattern(){
+		return AccessPattern.GLOBAL;
+	}
 	
 	/**
 	 * Returns a String that describes the effect that was applied.
@@ -58,6 +89,14 @@ public abstract class AbstractEffect implements Serializable{
 		return channels;
 	}
 
+	/**
+	 * Returns the range of pixels this effect is applied to.
+	 * @return Range[start, end], both inclusive.
+	 */
+	public int[] getRange() {
+		return range;
+	}
+
 	public boolean isEnabled() {
 		return enabled;
 	}
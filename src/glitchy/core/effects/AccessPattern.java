@@ -0,0 +1,28 @@
+package glitchy.core.effects;
+
+/**
+ * How an effect reads pixels, which decides how it can be executed. 
+ * @author Aksel
+ */
+public enum AccessPattern {
+	
+	/**
+	 * Each pixel's result only depends on that pixel, e.g. invert. 
+	 * The range can be split into chunks anywhere, and processed in any order, 
+	 * and runs of such effects may be fused into a single pass.
+	 */
+	POINTWISE,
+	
+	/**
+	 * Each pixel's result depends on pixels within a bounded distance, e.g. smear. 
+	 * The range can be split into chunks, as long as each chunk reads a margin around it.
+	 */
+	BOUNDED_WINDOW,
+	
+	/**
+	 * Any pixel's result may depend on any other pixel in the range, e.g. sort and shuffle. 
+	 * The effect is applied as a whole.
+	 */
+	GLOBAL,
+	
+}
@@ -1,25 +1,76 @@
 package glitchy.core.effects;
 
+import glitchy.core.imageProcessing.PixelBuffer;
 import glitchy.core.imageProcessing.PixelStream;
 
 /**
- * This effect can perform circular bitshifts to an image's pixels.
+ * This effect can perform circular bitshifts to an image's pixels. 
+ * Can shift each pixel, carrying its remainder into the next pixel, shift the 
+ * range as one continuous bitstream, or rotate each bit-plane along the range.
  * @author Aksel and Mikkel
  */
-public class BitShiftEffect extends AbstractEffect{
+public class BitShiftEffect extends WindowedEffect{
 	private static final long serialVersionUID = 180121265823438187L;
+	
+	/**
+	 * Name of the effect, as given by its Provider.
+	 */
+	public static final String NAME = "bitshift";
+	
+	/**
+	 * Third modifier for shifting each pixel, carrying remainders. 
+	 * Bitshifts without a third modifier, e.g. from older projects, shift pixels.
+	 */
+	public static final int PIXELS = 0;
+	
+	/**
+	 * Third modifier for shifting the range as one bitstream, by any number of bits.
+	 */
+	public static final int BITSTREAM = 1;
+	
+	/**
+	 * Third modifier for rotating bit-planes. Each bit of the channels travels 
+	 * the given number of pixels further along the range than the bit below it.
+	 */
+	public static final int BITPLANES = 2;
 
 	public BitShiftEffect(int[] modifiers, int[] range) {
 		super(modifiers, range);
 	}
 
+	/**
+	 * Prepares a bit shift, as chosen by the third modifier.
+	 */
+	@Override
+	protected TileFiller prepare(PixelStream pixelStream, int length){
+		//An empty range has nothing to shift, nor any length to shift around
+		if(length == 0)
+			return null;
+		
+		switch(getMode()){
+		
+		case BITSTREAM:
+			return shiftBitstream(pixelStream, length);
+			
+		case BITPLANES:
+			return rotateBitPlanes(pixelStream, length);
+			
+		default:
+			return shiftPixels(pixelStream);
+		}
+	}
+
 	/**
 	 * Performs a bit shift. 
 	 * A shift of 8 bits will shift by a channel, i.e. ARGB to BARG. 
-	 * The last remaining bits are put at the start, meaning it's a circular shift.
+	 * The last remaining bits are put at the start, meaning it's a circular shift. 
+	 * The bits carried into a pixel are the remainder of the pixel before it, so each tile 
+	 * is seeded with the remainder of the pixel before the tile, and tiles can be shifted in parallel.
+	 * @param pixelStream PixelStream to shift.
+	 * @return Filler of the range's tiles.
 	 */
-	public void applyEffect(PixelStream pixelStream){
-		int[] pixels = pixelStream.getPixels();
+	private TileFiller shiftPixels(PixelStream pixelStream){
+		PixelBuffer pixels = pixelStream.getPixels();
 		
 		int alphaChannel;
 		
@@ -35,34 +86,150 @@ public class BitShiftEffect extends AbstractEffect{
 		int shiftNum = modifiers[1];
 		
 		//Applying this mask with the & operator gets the remainder. 
-		int mask = (int) (Math.pow(2, shiftNum)-1);
-		
-		//The remaining bits from the previous shift.
-		//Starts out as the last remainder.
-		int pR = pixels[pixels.length-1] & mask;
+		//The mask was once calculated with Math.pow, which capped 2^31-1 and up, 
+		//and truncated negative shifts to 0. Projects with such shifts keep their result.
+		int mask = shiftNum <= 0 ? 0 : shiftNum >= 31 ? Integer.MAX_VALUE : (1 << shiftNum) - 1;
 		
-		//The remaining bits from the current shift.
-		int cR;
+		//The first pixel starts out with the last remainder.
+		int last = pixels.get(pixels.length()-1) & mask;
 		
-		for(int i = range[0]; i <= range[1]; i++){
-			//Current pixel
-			int p = pixels[i] ^ alphaChannel;
+		return (source, offset, from, tile) -> {
+			//The remaining bits from the previous shift.
+			int pR = offset > 0 ? (source[offset - 1] ^ alphaChannel) & mask : last;
 			
-			//Get remainder.
-			cR = p & mask;
+			//The remaining bits from the current shift.
+			int cR;
 			
-			//Remove remainder, and insert previous remainder at start.
-			p = alphaChannel | (p >>> shiftNum) | pR << affectedBits-shiftNum;
-			
-			//Store current remainder for use in next iteration.
-			pR = cR;
-			
-			pixels[i] = p;
-		}
+			for(int i = 0; i < tile.length; i++){
+				//Current pixel
+				int p = source[offset + i] ^ alphaChannel;
+				
+				//Get remainder.
+				cR = p & mask;
+				
+				//Remove remainder, and insert previous remainder at start.
+				p = alphaChannel | (p >>> shiftNum) | pR << affectedBits-shiftNum;
+				
+				//Store current remainder for use in next iteration.
+				pR = cR;
+				
+				tile[i] = p;
+			}
+		};
 	}
 
+	/**
+	 * Shifts the range as one continuous, circular bitstream, by any number of bits. 
+	 * The stream is the lowest 24 or 32 bits of each pixel, most significant bit first. 
+	 * Each output pixel is a funnel shift: the two source pixels it straddles are joined 
+	 * into one 64 bit word, which is shifted once, rather than bit by bit. 
+	 * @param pixelStream PixelStream to shift.
+	 * @param length Length of the range.
+	 * @return Filler of the range's tiles.
+	 */
+	private TileFiller shiftBitstream(PixelStream pixelStream, int length){
+		//Bits per pixel in the stream. 32 bits for all channels, 24 to ignore alpha.
+		int width = modifiers[0];
+		int streamMask = width >= 32 ? 0xffffffff : (1 << width) - 1;
+		long wordMask = streamMask & 0xffffffffL;
+		
+		int opaque = pixelStream.hasAlpha() ? 0 : 0xff000000;
+		
+		//Whole pixels, and remaining bits, to shift by
+		long shift = Math.floorMod((long) modifiers[1], (long) length * width);
+		int words = (int) (shift / width);
+		int bits = (int) (shift % width);
+		
+		return (source, offset, from, tile) -> {
+			for(int i = 0; i < tile.length; i++){
+				//The pixel whose bits end up at the start of this one, and the pixel before it
+				int lo = from + i - words;
+				if(lo < 0)
+					lo += length;
+				
+				int hi = lo == 0 ? length - 1 : lo - 1;
+				
+				long window = ((source[hi] & wordMask) << width) | (source[lo] & wordMask);
+				
+				tile[i] = (int) ((window >>> bits) & wordMask) | (source[from + i] & ~streamMask) | opaque;
+			}
+		};
+	}
+	
+	/**
+	 * Rotates each bit-plane along the range. Bit k of every channel is taken from the pixel 
+	 * k times the given number of pixels before it, wrapping around the range. 
+	 * All channels are moved at once, by masking the plane in every channel.
+	 * @param pixelStream PixelStream to rotate.
+	 * @param length Length of the range.
+	 * @return Filler of the range's tiles.
+	 */
+	private TileFiller rotateBitPlanes(PixelStream pixelStream, int length){
+		//Lowest bit of every affected channel
+		int planeMask = modifiers[0] >= 32 ? 0x01010101 : 0x00010101;
+		
+		//Bits that are not rotated
+		int kept = ~(planeMask * 0xff);
+		int opaque = pixelStream.hasAlpha() ? 0 : 0xff000000;
+		
+		//How far each plane travels
+		int[] offsets = new int[8];
+		for(int k = 0; k < 8; k++)
+			offsets[k] = (int) Math.floorMod((long) k * modifiers[1], (long) length);
+		
+		return (source, offset, from, tile) -> {
+			for(int i = 0; i < tile.length; i++){
+				int p = (source[from + i] & kept) | opaque;
+				
+				for(int k = 0; k < 8; k++){
+					int s = from + i - offsets[k];
+					if(s < 0)
+						s += length;
+					
+					p |= source[s] & (planeMask << k);
+				}
+				
+				tile[i] = p;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the mode, chosen by the third modifier.
+	 * @return PIXELS, BITSTREAM or BITPLANES.
+	 */
+	private int getMode(){
+		int mode = modifiers.length > 2 ? modifiers[2] : PIXELS;
+		return mode == BITSTREAM || mode == BITPLANES ? mode : PIXELS;
+	}
+
+	/**
+	 * Pixel shifts read the pixel before, while bitstream shifts and bit-plane rotations 
+	 * read pixels any distance away, as far as the shift takes them.
+	 */
+	@Override
+	protected int getWindow(){
+		return getMode() == PIXELS ? 1 : -1;
+	}
+	
 	@Override
 	public String toString() {
 		return "Bitshift";
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Provides BitShiftEffects.
+	 */
+	public static class Provider implements EffectProvider{
+		
+		@Override
+		public String getName(){
+			return NAME;
+		}
+		
+		@Override
+		public AbstractEffect createEffect(int[] modifiers, int[] range){
+			return new BitShiftEffect(modifiers, range);
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package glitchy.core.effects;
+
+import java.util.Arrays;
+
+/**
+ * A pointwise transform that sets each channel of a pixel from one channel of the 
+ * same pixel, through a lookup table. Transforms compose into a single transform, 
+ * so a run of pointwise effects costs one pass over the pixels.
+ * Channels are indexed by position: 0 is blue, 1 green, 2 red and 3 alpha. 
+ * Transforms that only move and invert channels, i.e. any mix of reorders and inverts, 
+ * are compiled into a few masked rotations and an XOR, with no table lookups.
+ * @author Aksel
+ */
+final class ChannelTransform{
+
+	/**
+	 * The channel each output channel is taken from.
+	 */
+	private final int[] sources;
+
+	/**
+	 * Maps the level of each output channel's source, to the output level, 
+	 * already shifted into the output channel's position.
+	 */
+	private final int[][] tables;
+
+	/**
+	 * The transform that changes nothing.
+	 */
+	private static final ChannelTransform IDENTITY = permutation(new int[]{0, 1, 2, 3});
+
+	/**
+	 * Masks of the source channels that move by the same amount, if compiled. Null if not.
+	 */
+	private final int[] rotationMasks;
+
+	/**
+	 * How far each group of channels is rotated left, in bits.
+	 */
+	private final int[] rotations;
+
+	/**
+	 * Inverted bits, XOR'ed into the result after the rotations.
+	 */
+	private final int xorMask;
+
+	private ChannelTransform(int[] sources, int[][] tables){
+		this.sources = sources;
+		this.tables = tables;
+
+		//Each table must be an inversion of some bits, i.e. v ^ k, for the transform to compile
+		int xor = 0;
+		boolean compiles = true;
+
+		for(int c = 0; c < 4 && compiles; c++){
+			int k = tables[c][0] >>> (8 * c);
+			xor |= k << (8 * c);
+
+			for(int v = 0; v < 256 && compiles; v++)
+				compiles = tables[c][v] == (v ^ k) << (8 * c);
+		}
+
+		if(!compiles){
+			rotationMasks = null;
+			rotations = null;
+			xorMask = 0;
+			return;
+		}
+
+		//Group source channels by how far they move
+		int[] masksByRotation = new int[32];
+		for(int c = 0; c < 4; c++){
+			int rotation = (8 * (c - sources[c])) & 31;
+			masksByRotation[rotation] |= 0xff << (8 * sources[c]);
+		}
+
+		int groups = 0;
+		for(int mask : masksByRotation)
+			if(mask != 0)
+				groups++;
+
+		rotationMasks = new int[groups];
+		rotations = new int[groups];
+
+		for(int rotation = 0, g = 0; rotation < 32; rotation++){
+			if(masksByRotation[rotation] != 0){
+				rotationMasks[g] = masksByRotation[rotation];
+				rotations[g] = rotation;
+				g++;
+			}
+		}
+
+		xorMask = xor;
+	}
+
+	/**
+	 * Returns a transform that changes nothing.
+	 * @return Identity transform.
+	 */
+	static ChannelTransform identity(){
+		return IDENTITY;
+	}
+
+	/**
+	 * Returns a transform that XORs every pixel with a mask.
+	 * @param mask Mask.
+	 * @return Transform.
+	 */
+	static ChannelTransform xor(int mask){
+		int[][] tables = new int[4][256];
+
+		for(int c = 0; c < 4; c++){
+			int bits = (mask >>> (8 * c)) & 0xff;
+			for(int v = 0; v < 256; v++)
+				tables[c][v] = (v ^ bits) << (8 * c);
+		}
+
+		return new ChannelTransform(new int[]{0, 1, 2, 3}, tables);
+	}
+
+	/**
+	 * Returns a transform that moves channels.
+	 * @param sources The channel each output channel is taken from.
+	 * @return Transform.
+	 */
+	static ChannelTransform permutation(int[] sources){
+		int[][] tables = new int[4][256];
+
+		for(int c = 0; c < 4; c++)
+			for(int v = 0; v < 256; v++)
+				tables[c][v] = v << (8 * c);
+
+		return new ChannelTransform(sources.clone(), tables);
+	}
+
+	/**
+	 * Returns the transform that applies this transform, and then the next.
+	 * @param next Transform to apply after this one.
+	 * @return Composed transform.
+	 */
+	ChannelTransform then(ChannelTransform next){
+		int[] composedSources = new int[4];
+		int[][] composedTables = new int[4][256];
+
+		for(int c = 0; c < 4; c++){
+			//Output channel c of next reads channel m of this transform's output
+			int m = next.sources[c];
+			composedSources[c] = sources[m];
+
+			for(int v = 0; v < 256; v++)
+				composedTables[c][v] = next.tables[c][tables[m][v] >>> (8 * m)];
+		}
+
+		return new ChannelTransform(composedSources, composedTables);
+	}
+
+	/**
+	 * Whether this transform changes nothing.
+	 * @return True if identity.
+	 */
+	boolean isIdentity(){
+		return this == IDENTITY || (Arrays.equals(sources, IDENTITY.sources) && Arrays.deepEquals(tables, IDENTITY.tables));
+	}
+
+	/**
+	 * Transforms pixels [from, to) of an array, in place.
+	 * @param pixels Pixels.
+	 * @param from First index, inclusive.
+	 * @param to Last index, exclusive.
+	 */
+	void apply(int[] pixels, int from, int to){
+		if(rotations != null){
+			applyCompiled(pixels, from, to);
+			return;
+		}
+
+		int[] b = tables[0], g = tables[1], r = tables[2], a = tables[3];
+		int sb = 8 * sources[0], sg = 8 * sources[1], sr = 8 * sources[2], sa = 8 * sources[3];
+
+		for(int i = from; i < to; i++){
+			int p = pixels[i];
+			pixels[i] = a[(p >>> sa) & 0xff] | r[(p >>> sr) & 0xff] | g[(p >>> sg) & 0xff] | b[(p >>> sb) & 0xff];
+		}
+	}
+
+	/**
+	 * Transforms pixels with masked rotations and an XOR. Specialised by the number of rotations, 
+	 * such that the loops are branch-free: 1 for pure inversions and channel rotations, e.g. ARGB to BARG, 
+	 * 2 for swaps, e.g. ARGB to ABGR, and up to 4 for arbitrary orders.
+	 * @param pixels Pixels.
+	 * @param from First index, inclusive.
+	 * @param to Last index, exclusive.
+	 */
+	private void applyCompiled(int[] pixels, int from, int to){
+		int x = xorMask;
+		int m0 = rotationMasks[0], r0 = rotations[0];
+
+		switch(rotations.length){
+
+		case 1:
+			for(int i = from; i < to; i++)
+				pixels[i] = Integer.rotateLeft(pixels[i] & m0, r0) ^ x;
+			break;
+
+		case 2:{
+			int m1 = rotationMasks[1], r1 = rotations[1];
+
+			for(int i = from; i < to; i++){
+				int p = pixels[i];
+				pixels[i] = (Integer.rotateLeft(p & m0, r0) | Integer.rotateLeft(p & m1, r1)) ^ x;
+			}
+			break;
+		}
+
+		case 3:{
+			int m1 = rotationMasks[1], r1 = rotations[1];
+			int m2 = rotationMasks[2], r2 = rotations[2];
+
+			for(int i = from; i < to; i++){
+				int p = pixels[i];
+				pixels[i] = (Integer.rotateLeft(p & m0, r0) | Integer.rotateLeft(p & m1, r1) | Integer.rotateLeft(p & m2, r2)) ^ x;
+			}
+			break;
+		}
+
+		default:{
+			int m1 = rotationMasks[1], r1 = rotations[1];
+			int m2 = rotationMasks[2], r2 = rotations[2];
+			int m3 = rotationMasks[3], r3 = rotations[3];
+
+			for(int i = from; i < to; i++){
+				int p = pixels[i];
+				pixels[i] = (Integer.rotateLeft(p & m0, r0) | Integer.rotateLeft(p & m1, r1) 
+						| Integer.rotateLeft(p & m2, r2) | Integer.rotateLeft(p & m3, r3)) ^ x;
+			}
+		}
+		}
+	}
+}
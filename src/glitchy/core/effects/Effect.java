@@ -1,12 +0,0 @@
-package glitchy.core.effects;
-
-public enum Effect {
-	
-	SORT,
-	SHUFFLE,
-	INVERT,
-	REORDER,
-	SMEAR,
-	BITSHIFT,
-	
-}
@@ -0,0 +1,13 @@
+package glitchy.core.effects;
+
+/**
+ * Thrown by an effect, when its EffectMonitor has been cancelled.
+ * @author Aksel
+ */
+public class EffectCancelledException extends RuntimeException{
+	private static final long serialVersionUID = -2870391542512620167L;
+
+	public EffectCancelledException(){
+		super("Effect cancelled");
+	}
+}
@@ -0,0 +1,226 @@
+package glitchy.core.effects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import glitchy.core.imageProcessing.PixelBuffer;
+
+/**
+ * Snapshot of a PixelStream's pixels, after a run of its effects has been applied.
+ * Only the ranges touched by that run are stored. Checkpoints form a chain:
+ * restoring the original pixels, followed by every checkpoint up to and including
+ * this one, gives the pixels as they were after the run.
+ * @author Aksel
+ */
+public class EffectCheckpoint{
+
+	/**
+	 * Index of the first effect in the run.
+	 */
+	final int from;
+
+	/**
+	 * Index after the last effect in the run.
+	 */
+	final int to;
+
+	/**
+	 * The effects in the run, as they were when the checkpoint was made.
+	 */
+	private final AbstractEffect[] effects;
+
+	/**
+	 * Whether each effect in the run was enabled.
+	 */
+	private final boolean[] enabled;
+
+	/**
+	 * Start index of each stored span. Spans are sorted, and do not overlap.
+	 */
+	private final int[] starts;
+
+	/**
+	 * Pixels of each stored span.
+	 */
+	private final int[][] spans;
+
+	private EffectCheckpoint(int from, int to, AbstractEffect[] effects, boolean[] enabled, int[] starts, int[][] spans){
+		this.from = from;
+		this.to = to;
+		this.effects = effects;
+		this.enabled = enabled;
+		this.starts = starts;
+		this.spans = spans;
+	}
+
+	/**
+	 * Captures the pixels touched by the effects in [from, to).
+	 * @param effectList The PixelStream's effects.
+	 * @param from Index of first effect.
+	 * @param to Index after last effect.
+	 * @param pixels Pixels, after the effects have been applied.
+	 * @return Checkpoint.
+	 */
+	static EffectCheckpoint capture(List<AbstractEffect> effectList, int from, int to, PixelBuffer pixels){
+		AbstractEffect[] effects = new AbstractEffect[to - from];
+		boolean[] enabled = new boolean[to - from];
+
+		//Half-open [start, end) intervals touched by enabled effects
+		ArrayList<int[]> intervals = new ArrayList<>();
+
+		for(int i = from; i < to; i++){
+			AbstractEffect effect = effectList.get(i);
+			effects[i - from] = effect;
+			enabled[i - from] = effect.isEnabled();
+
+			if(effect.isEnabled()){
+				int start = Math.max(0, effect.range[0]);
+				int end = (int) Math.min(pixels.length(), effect.range[1] + 1L);
+				if(start < end)
+					intervals.add(new int[]{start, end});
+			}
+		}
+
+		intervals = union(intervals);
+
+		int[] starts = new int[intervals.size()];
+		int[][] spans = new int[intervals.size()][];
+
+		for(int i = 0; i < starts.length; i++){
+			int[] interval = intervals.get(i);
+			starts[i] = interval[0];
+			spans[i] = new int[interval[1] - interval[0]];
+			pixels.get(starts[i], spans[i], 0, spans[i].length);
+		}
+
+		return new EffectCheckpoint(from, to, effects, enabled, starts, spans);
+	}
+
+	/**
+	 * Merges this checkpoint with the checkpoint that follows it in the chain.
+	 * The result restores the same pixels as the later checkpoint,
+	 * but only one copy of overlapping spans is kept.
+	 * @param next The next checkpoint.
+	 * @return Merged checkpoint.
+	 */
+	EffectCheckpoint merge(EffectCheckpoint next){
+		AbstractEffect[] mergedEffects = Arrays.copyOf(effects, effects.length + next.effects.length);
+		System.arraycopy(next.effects, 0, mergedEffects, effects.length, next.effects.length);
+
+		boolean[] mergedEnabled = Arrays.copyOf(enabled, enabled.length + next.enabled.length);
+		System.arraycopy(next.enabled, 0, mergedEnabled, enabled.length, next.enabled.length);
+
+		//Spans as [start, end, source checkpoint (0 = this, 1 = next), offset in source span, source span]
+		ArrayList<int[]> pieces = new ArrayList<>();
+
+		for(int i = 0; i < next.starts.length; i++)
+			pieces.add(new int[]{next.starts[i], next.starts[i] + next.spans[i].length, 1, 0, i});
+
+		//Keep only the parts of this checkpoint's spans that the next one does not overwrite
+		for(int i = 0; i < starts.length; i++){
+			int start = starts[i];
+			int end = start + spans[i].length;
+
+			for(int j = 0; j < next.starts.length && start < end; j++){
+				int nStart = next.starts[j];
+				int nEnd = nStart + next.spans[j].length;
+
+				if(nEnd <= start || nStart >= end)
+					continue;
+
+				if(nStart > start)
+					pieces.add(new int[]{start, nStart, 0, start - starts[i], i});
+
+				start = Math.max(start, nEnd);
+			}
+
+			if(start < end)
+				pieces.add(new int[]{start, end, 0, start - starts[i], i});
+		}
+
+		pieces.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+		int[] mergedStarts = new int[pieces.size()];
+		int[][] mergedSpans = new int[pieces.size()][];
+
+		for(int i = 0; i < mergedStarts.length; i++){
+			int[] piece = pieces.get(i);
+			int[] source = piece[2] == 0 ? spans[piece[4]] : next.spans[piece[4]];
+
+			mergedStarts[i] = piece[0];
+
+			//Whole spans can be shared, rather than copied
+			if(piece[3] == 0 && piece[1] - piece[0] == source.length)
+				mergedSpans[i] = source;
+			else
+				mergedSpans[i] = Arrays.copyOfRange(source, piece[3], piece[3] + piece[1] - piece[0]);
+		}
+
+		return new EffectCheckpoint(from, next.to, mergedEffects, mergedEnabled, mergedStarts, mergedSpans);
+	}
+
+	/**
+	 * Whether the effects in this checkpoint's run are unchanged,
+	 * i.e. still in the same position, and still enabled or disabled.
+	 * @param effectList The PixelStream's effects.
+	 * @return True if the checkpoint can be restored.
+	 */
+	boolean isValid(List<AbstractEffect> effectList){
+		if(to > effectList.size())
+			return false;
+
+		for(int i = from; i < to; i++){
+			AbstractEffect effect = effectList.get(i);
+
+			if(effect != effects[i - from] || effect.isEnabled() != enabled[i - from])
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Writes the stored spans back into the pixels.
+	 * @param pixels Pixels to restore.
+	 */
+	void restore(PixelBuffer pixels){
+		for(int i = 0; i < starts.length; i++)
+			pixels.put(starts[i], spans[i], 0, spans[i].length);
+	}
+
+	/**
+	 * Returns the number of stored pixels.
+	 * @return Size, in pixels.
+	 */
+	long size(){
+		long size = 0;
+
+		for(int[] span : spans)
+			size += span.length;
+
+		return size;
+	}
+
+	/**
+	 * Merges overlapping and adjacent intervals.
+	 * @param intervals Half-open intervals.
+	 * @return Sorted, non-overlapping intervals.
+	 */
+	private static ArrayList<int[]> union(ArrayList<int[]> intervals){
+		intervals.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+		ArrayList<int[]> union = new ArrayList<>();
+
+		for(int[] interval : intervals){
+			int[] last = union.isEmpty() ? null : union.get(union.size() - 1);
+
+			if(last != null && interval[0] <= last[1])
+				last[1] = Math.max(last[1], interval[1]);
+			else
+				union.add(new int[]{interval[0], interval[1]});
+		}
+
+		return union;
+	}
+}
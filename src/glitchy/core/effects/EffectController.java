@@ -1,68 +1,443 @@
 package glitchy.core.effects;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import glitchy.core.imageProcessing.PixelBuffer;
 
 import glitchy.core.imageProcessing.PixelStream;
 
 /**
  * This class controls the effects subpackage.
+ * Effects are created by EffectProviders, discovered with ServiceLoader. 
+ * Each effect's AccessPattern decides how it is executed: runs of pointwise effects 
+ * that are ChannelTransforms are fused, other pointwise effects are applied in parallel chunks, 
+ * bounded window effects in parallel tiles that each read the window before them, 
+ * and global effects either in parallel tiles that read a copy of the range, or as a whole.
  * @author Aksel, Mikkel and Rasmus
  *
  */
 public class EffectController{
+	
+	/**
+	 * Transforms a chunk of pixels in place.
+	 */
+	interface ChunkTransform{
+		void apply(int[] pixels, int from, int to);
+	}
+	
+	/**
+	 * Effect providers, by name.
+	 */
+	private static final Map<String, EffectProvider> providers = loadProviders();
 
 	/**
-	 * Runs through a pixelstream's effects, and applies them as desired.
+	 * Maximum number of pixels each PixelStream may keep in checkpoints.
+	 * 32 megapixels, i.e. 128mb, by default.
+	 */
+	private static volatile long checkpointBudget = 1 << 25;
+	
+	/**
+	 * Sets the maximum number of pixels each PixelStream may keep in checkpoints.
+	 * @param pixels Number of pixels. 0 disables checkpoints.
+	 */
+	public static void setCheckpointBudget(long pixels){
+		checkpointBudget = pixels;
+	}
+	
+	/**
+	 * Whether effects that can split their range into independent parts, process them in parallel.
+	 */
+	private static volatile boolean parallel = true;
+	
+	/**
+	 * Sets whether effects process independent parts of their range in parallel.
+	 * @param parallel True for parallel, false for a single thread.
+	 */
+	public static void setParallel(boolean parallel){
+		EffectController.parallel = parallel;
+	}
+	
+	/**
+	 * Whether effects process independent parts of their range in parallel.
+	 * @return True if parallel.
+	 */
+	static boolean isParallel(){
+		return parallel;
+	}
+	
+	/**
+	 * Finds every EffectProvider listed in META-INF/services. 
+	 * If two providers share a name, the first one found is used.
+	 * @return Providers, by name.
+	 */
+	private static Map<String, EffectProvider> loadProviders(){
+		LinkedHashMap<String, EffectProvider> map = new LinkedHashMap<>();
+		
+		for(EffectProvider provider : ServiceLoader.load(EffectProvider.class))
+			map.putIfAbsent(provider.getName(), provider);
+		
+		return Collections.unmodifiableMap(map);
+	}
+	
+	/**
+	 * Returns the provider of the named effect.
+	 * @param name Effect name, e.g. "sort".
+	 * @return Provider, or null if there is none.
+	 */
+	public static EffectProvider getProvider(String name){
+		return providers.get(name);
+	}
+	
+	/**
+	 * Returns every effect provider, in the order they were found.
+	 * @return Providers.
+	 */
+	public static Collection<EffectProvider> getProviders(){
+		return providers.values();
+	}
+
+	/**
+	 * Resets a pixelstream to its last valid checkpoint, and applies the 
+	 * effects after it as desired. Checkpoints made before a changed effect 
+	 * stay valid, so only the effects from the changed one and on are reapplied. 
+	 * Runs of pointwise effects are fused, and applied in a single pass. 
+	 * Cuts are applied between the same effects they were made between, 
+	 * so the pixels are the same whichever checkpoints are kept.
 	 * @param pixelStream PixelStream to apply effects to.
 	 */
 	public void applyEffects(PixelStream pixelStream){
 		ArrayList<AbstractEffect> effects = pixelStream.getEffects();
+		ArrayList<EffectCheckpoint> checkpoints = pixelStream.getCheckpoints();
+		
+		//Drop the first checkpoint whose effects have changed, and all after it
+		int valid = 0;
+		while(valid < checkpoints.size() && checkpoints.get(valid).isValid(effects))
+			valid++;
+		
+		checkpoints.subList(valid, checkpoints.size()).clear();
+		
+		pixelStream.resetPixels();
+		
+		//Cuts outside the effects' ranges are not in the checkpoints
+		for(EffectCheckpoint checkpoint : checkpoints){
+			pixelStream.applyCuts(checkpoint.from, checkpoint.to);
+			checkpoint.restore(pixelStream.getPixels());
+		}
+		
+		int i = checkpointEnd(checkpoints);
+		
+		while(i < effects.size()){
+			pixelStream.applyCuts(i, i + 1);
+			
+			//Disabled effects change nothing, so they do not break up a run. Cuts do.
+			ArrayList<ChannelTransform> transforms = new ArrayList<>();
+			while(i + transforms.size() < effects.size()){
+				if(!transforms.isEmpty() && pixelStream.hasCut(i + transforms.size()))
+					break;
+				
+				AbstractEffect effect = effects.get(i + transforms.size());
+				ChannelTransform transform = null;
+				
+				if(!effect.isEnabled())
+					transform = ChannelTransform.identity();
+				else if(effect.getAccessPattern() == AccessPattern.POINTWISE)
+					transform = effect.getChannelTransform();
+				
+				if(transform == null)
+					break;
+				
+				transforms.add(transform);
+			}
+			
+			int end = i + 1;
+			
+			if(transforms.size() > 1){
+				end = i + transforms.size();
+				applyFused(pixelStream, effects.subList(i, end), transforms);
+			}
+			
+			else if(effects.get(i).isEnabled()){
+				effects.get(i).applyEffect(pixelStream);
+			}
+			
+			//Disabled effects may have been enabled during the last render
+			for(int j = i; j < end; j++)
+				markDirty(pixelStream, effects.get(j));
+			
+			addCheckpoint(pixelStream, i, end);
+			i = end;
+		}
+		
+		pixelStream.applyCuts(effects.size(), Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Applies a run of pointwise effects in a single pass. The effects' ranges split the pixels 
+	 * into segments, each covered by the same effects. Each segment's effects are composed into 
+	 * one transform, which is then applied once per pixel.
+	 * @param pixelStream PixelStream to apply the effects to.
+	 * @param effects The effects, in order.
+	 * @param transforms Each effect's transform.
+	 */
+	private void applyFused(PixelStream pixelStream, List<AbstractEffect> effects, List<ChannelTransform> transforms){
+		PixelBuffer pixels = pixelStream.getPixels();
+		long length = pixels.length();
+		
+		//Segment boundaries, where an enabled effect's range starts or ends
+		long[] bounds = new long[2 * effects.size()];
+		int count = 0;
+		
 		for(AbstractEffect effect : effects){
 			if(effect.isEnabled()){
-				effect.applyEffect(pixelStream);
+				bounds[count++] = Math.max(0, Math.min(length, effect.range[0]));
+				bounds[count++] = Math.max(0, Math.min(length, effect.range[1] + 1L));
+			}
+		}
+		
+		bounds = Arrays.stream(bounds, 0, count).sorted().distinct().toArray();
+		
+		for(int s = 0; s + 1 < bounds.length; s++){
+			long from = bounds[s];
+			long to = bounds[s + 1];
+			
+			ChannelTransform fused = ChannelTransform.identity();
+			
+			for(int e = 0; e < effects.size(); e++){
+				AbstractEffect effect = effects.get(e);
+				
+				if(effect.isEnabled() && effect.range[0] <= from && effect.range[1] + 1L >= to)
+					fused = fused.then(transforms.get(e));
 			}
+			
+			if(!fused.isIdentity())
+				transform(pixels, from, to, fused::apply, EffectMonitor.NONE);
 		}
 	}
 	
 	/**
-	 * Creates the desired effect, and applies and adds it to the pixelstream.
-	 * @param pixelStream PixelStream to apply an effect to.
-	 * @param e Desired effect.
-	 * @param modifiers Effect modifiers
+	 * Runs tasks 0 to count-1, in parallel unless turned off. 
+	 * Once a task throws, e.g. when the effect is cancelled, the tasks that have not 
+	 * started are skipped, and the exception is rethrown once every running task has finished. 
+	 * No task is still writing pixels when an effect is cancelled, and its pixels are rebuilt.
+	 * @param count Number of tasks.
+	 * @param task Runs a task, given its index.
 	 */
-	public void applyEffect(PixelStream pixelStream, Effect e, int[] modifiers){	
+	static void runTasks(int count, IntConsumer task){
+		if(!parallel){
+			for(int i = 0; i < count; i++)
+				task.accept(i);
+			return;
+		}
 		
-		AbstractEffect effect = null;
-
-		int[] range = pixelStream.getSelectionRange();
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
 		
-		switch(e){
-		case BITSHIFT:
-			effect = new BitShiftEffect(modifiers,range);
-			break;
-
-		case INVERT:
-			effect = new InvertEffect(modifiers,range);
-			break;
+		//Tasks never throw out of the stream, as it would return while other tasks still run
+		IntStream.range(0, count).parallel().forEach(i -> {
+			if(failure.get() != null)
+				return;
 			
-		case REORDER:
-			effect = new ReorderEffect(modifiers,range);
-			break;
+			try{
+				task.accept(i);
+			} catch (RuntimeException e){
+				failure.compareAndSet(null, e);
+			}
+		});
+		
+		if(failure.get() != null)
+			throw failure.get();
+	}
+	
+	/**
+	 * Transforms pixels [from, to), a chunk at a time. 
+	 * Chunks are transformed in parallel, unless turned off.
+	 * @param pixels Pixels.
+	 * @param from First index, inclusive.
+	 * @param to Last index, exclusive.
+	 * @param transform Transforms a chunk.
+	 * @param monitor Receives progress, and may cancel the transform.
+	 */
+	static void transform(PixelBuffer pixels, long from, long to, ChunkTransform transform, EffectMonitor monitor){
+		AtomicLong done = new AtomicLong();
+		int chunkSize = EffectMonitor.CHUNK_SIZE;
+		int chunks = (int) ((to - from + chunkSize - 1) / chunkSize);
+		
+		runTasks(chunks, c -> {
+			monitor.progress(done.get(), to - from);
 			
-		case SHUFFLE:
-			effect = new ShuffleEffect(modifiers,range);
-			break;
+			long start = from + (long) c * chunkSize;
+			int[] chunk = new int[(int) Math.min(chunkSize, to - start)];
 			
-		case SMEAR:
-			effect = new SmearEffect(modifiers,range);
-			break;
+			pixels.get(start, chunk, 0, chunk.length);
+			transform.apply(chunk, 0, chunk.length);
+			pixels.put(start, chunk, 0, chunk.length);
+			done.addAndGet(chunk.length);
+		});
+	}
+	
+	/**
+	 * Applies a windowed effect a tile at a time. Tiles are filled in parallel, unless turned off. 
+	 * Tiles of bounded window effects read their own pixels, and the window before them, 
+	 * which is read before any tile is written. Tiles of global effects, and of windows 
+	 * that would be read as many times as the range has pixels, read a copy of the whole range.
+	 * @param pixelStream PixelStream to apply the effect to.
+	 * @param effect The effect.
+	 * @param monitor Receives progress, and may cancel the effect.
+	 */
+	static void applyTiled(PixelStream pixelStream, WindowedEffect effect, EffectMonitor monitor){
+		PixelBuffer pixels = pixelStream.getPixels();
+		long start = Math.max(0, effect.range[0]);
+		int length = (int) Math.max(0, Math.min(pixels.length(), effect.range[1] + 1L) - start);
+		
+		WindowedEffect.TileFiller filler = effect.prepare(pixelStream, length);
+		if(filler == null)
+			return;
+		
+		int window = effect.getWindow();
+		int tileSize = effect.getTileSize();
+		int tiles = (int) ((length + (long) tileSize - 1) / tileSize);
+		
+		int[] range = null;
+		int[][] margins = null;
+		
+		if(effect.getAccessPattern() == AccessPattern.GLOBAL || (long) window * (tiles - 1) >= length){
+			range = new int[length];
+			pixels.get(start, range, 0, length);
+		}
+		
+		else{
+			margins = new int[tiles][];
 			
-		case SORT:
-			effect = new SortEffect(modifiers,range);
-			break;
+			for(int t = 0; t < tiles; t++){
+				long from = (long) t * tileSize;
+				margins[t] = new int[(int) Math.min(window, from)];
+				pixels.get(start + from - margins[t].length, margins[t], 0, margins[t].length);
+			}
+		}
+		
+		int[] whole = range;
+		int[][] before = margins;
+		AtomicLong done = new AtomicLong();
+		
+		runTasks(tiles, t -> {
+			int from = t * tileSize;
+			int[] tile = new int[(int) Math.min(tileSize, (long) length - from)];
+			
+			if(whole != null){
+				filler.fill(whole, from, from, tile);
+			}
+			
+			else{
+				int[] margin = before[t];
+				int[] source = new int[margin.length + tile.length];
+				
+				System.arraycopy(margin, 0, source, 0, margin.length);
+				pixels.get(start + from, source, margin.length, tile.length);
+				
+				filler.fill(source, margin.length, from, tile);
+			}
+			
+			pixels.put(start + from, tile, 0, tile.length);
+			monitor.progress(done.addAndGet(tile.length), length);
+		});
+	}
+	
+	/**
+	 * Creates the named effect with its provider, and applies and adds it to the pixelstream.
+	 * @param pixelStream PixelStream to apply an effect to.
+	 * @param name Effect name, e.g. "sort".
+	 * @param modifiers Effect modifiers
+	 * @param monitor Receives progress, and may cancel the effect.
+	 * @return False if the effect was cancelled. The pixels are then restored, and the effect is not added.
+	 * @throws IllegalArgumentException If no provider has the name.
+	 */
+	public boolean applyEffect(PixelStream pixelStream, String name, int[] modifiers, EffectMonitor monitor){
+		
+		EffectProvider provider = providers.get(name);
+		
+		if(provider == null)
+			throw new IllegalArgumentException("Unknown effect: " + name);
+		
+		AbstractEffect effect = provider.createEffect(modifiers, pixelStream.getSelectionRange());
+		
+		try{
+			effect.applyEffect(pixelStream, monitor);
+		} catch (EffectCancelledException ex){
+			//Rebuild from the checkpoints, which drops the partially applied effect
+			markDirty(pixelStream, effect);
+			applyEffects(pixelStream);
+			return false;
 		}
 		
-		effect.applyEffect(pixelStream);
 		pixelStream.addEffect(effect);
+		markDirty(pixelStream, effect);
+		
+		int index = pixelStream.getEffects().size() - 1;
+		addCheckpoint(pixelStream, index, index + 1);
+		
+		return true;
+	}
+	
+	/**
+	 * Makes a checkpoint after the effects in [from, to), if the checkpoints 
+	 * cover every effect before them. Keeps the checkpoints within budget, by 
+	 * merging the oldest checkpoints.
+	 * @param pixelStream PixelStream the effects were applied to.
+	 * @param from Index of first effect.
+	 * @param to Index after last effect.
+	 */
+	private void addCheckpoint(PixelStream pixelStream, int from, int to){
+		ArrayList<EffectCheckpoint> checkpoints = pixelStream.getCheckpoints();
+		
+		if(checkpointEnd(checkpoints) != from)
+			return;
+		
+		checkpoints.add(EffectCheckpoint.capture(pixelStream.getEffects(), from, to, pixelStream.getPixels()));
+		
+		long size = 0;
+		for(EffectCheckpoint checkpoint : checkpoints)
+			size += checkpoint.size();
+		
+		while(size > checkpointBudget && checkpoints.size() > 1){
+			EffectCheckpoint merged = checkpoints.get(0).merge(checkpoints.get(1));
+			size += merged.size() - checkpoints.get(0).size() - checkpoints.get(1).size();
+			
+			checkpoints.remove(0);
+			checkpoints.set(0, merged);
+		}
+		
+		if(size > checkpointBudget)
+			checkpoints.clear();
+	}
+	
+	/**
+	 * Marks the range an effect is applied to as changed.
+	 * @param pixelStream PixelStream the effect was applied to.
+	 * @param effect The effect.
+	 */
+	private void markDirty(PixelStream pixelStream, AbstractEffect effect){
+		pixelStream.markDirty(effect.range[0], effect.range[1]+1);
+	}
+	
+	/**
+	 * Returns the index of the first effect not covered by the checkpoints.
+	 * @param checkpoints Checkpoints.
+	 * @return Effect index.
+	 */
+	private int checkpointEnd(ArrayList<EffectCheckpoint> checkpoints){
+		if(checkpoints.isEmpty())
+			return 0;
+		
+		return checkpoints.get(checkpoints.size() - 1).to;
 	}
 }
\ No newline at end of file
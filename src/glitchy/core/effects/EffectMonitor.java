@@ -0,0 +1,81 @@
+package glitchy.core.effects;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Follows an effect while it is applied. Effects report their progress 
+ * every chunk of pixels, and stop at the next chunk once cancelled.
+ * @author Aksel
+ */
+public class EffectMonitor{
+
+	/**
+	 * Number of pixels effects process between each report.
+	 */
+	public static final int CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * A monitor that is never cancelled, and ignores progress.
+	 */
+	public static final EffectMonitor NONE = new EffectMonitor(null);
+
+	/**
+	 * Receives progress, from 0 to 1. May be null.
+	 */
+	private final DoubleConsumer listener;
+
+	/**
+	 * Whether the effect has been cancelled.
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * Last progress passed to the listener, in whole percent.
+	 */
+	private volatile int percent = -1;
+
+	/**
+	 * Creates a monitor.
+	 * @param listener Receives progress, from 0 to 1. May be null.
+	 */
+	public EffectMonitor(DoubleConsumer listener){
+		this.listener = listener;
+	}
+
+	/**
+	 * Cancels the effect. It stops at its next report.
+	 */
+	public void cancel(){
+		if(this != NONE)
+			cancelled = true;
+	}
+
+	/**
+	 * Whether the effect has been cancelled.
+	 * @return True if cancelled.
+	 */
+	public boolean isCancelled(){
+		return cancelled;
+	}
+
+	/**
+	 * Reports progress, and stops the effect if it has been cancelled.
+	 * The listener is only told when progress reaches a new whole percent.
+	 * @param done Work done.
+	 * @param total Total work.
+	 * @throws EffectCancelledException If the effect has been cancelled.
+	 */
+	public void progress(long done, long total){
+		if(cancelled)
+			throw new EffectCancelledException();
+
+		if(listener == null || total <= 0)
+			return;
+
+		int p = (int) (Math.min(done, total) * 100 / total);
+		if(p != percent){
+			percent = p;
+			listener.accept(p / 100.0);
+		}
+	}
+}
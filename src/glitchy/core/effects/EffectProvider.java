@@ -0,0 +1,47 @@
+package glitchy.core.effects;
+
+import java.util.Locale;
+
+/**
+ * Creates effects of one kind. Providers are discovered with ServiceLoader, 
+ * by listing them in META-INF/services/glitchy.core.effects.EffectProvider, 
+ * so effects can be added without changing EffectController. 
+ * Each provider's effect is listed in the Effects menu. Effects report their own 
+ * AccessPattern, as it may depend on their modifiers.
+ * @author Aksel
+ */
+public interface EffectProvider {
+	
+	/**
+	 * Returns the name effects are requested by, e.g. "sort". 
+	 * Names are lower case, and unique among providers.
+	 * @return Name.
+	 */
+	String getName();
+	
+	/**
+	 * Returns the name shown in menus, e.g. "Sort". 
+	 * The name, capitalized, by default.
+	 * @return Display name.
+	 */
+	default String getDisplayName(){
+		return getName().substring(0, 1).toUpperCase(Locale.ROOT) + getName().substring(1);
+	}
+	
+	/**
+	 * Returns the names of the effect's modifiers, in order, for effects 
+	 * that have no popup of their own. The user enters each as a number.
+	 * @return Modifier names. None by default.
+	 */
+	default String[] getModifierNames(){
+		return new String[0];
+	}
+	
+	/**
+	 * Creates an effect.
+	 * @param modifiers Effect modifiers.
+	 * @param range Range of pixels to apply the effect to, [start, end], both inclusive.
+	 * @return Effect.
+	 */
+	AbstractEffect createEffect(int[] modifiers, int[] range);
+}
@@ -1,13 +1,16 @@
 package glitchy.core.effects;
 
-import glitchy.core.imageProcessing.PixelStream;
-
 /**
  * This effect can invert any of a pixel's channels.
  * @author Aksel and Mikkel
  */
-public class InvertEffect extends AbstractEffect{
+public class InvertEffect extends PointwiseEffect{
 	private static final long serialVersionUID = 823124839380095016L;
+	
+	/**
+	 * Name of the effect, as given by its Provider.
+	 */
+	public static final String NAME = "invert";
 
 	public InvertEffect(int[] modifiers, int[] range) {
 		super(modifiers, range);
@@ -15,28 +18,47 @@ public class InvertEffect extends AbstractEffect{
 
 	/**
 	 * Inverts the specified color channels.
-	 * @param pixelStream PixelStream to be inverted.
 	 */
-	public void applyEffect(PixelStream pixelStream){
+	@Override
+	protected void applyPointwise(int[] pixels, int from, int to){
+		
+		int mask = 0;
 		
-		int[] pixels = pixelStream.getPixels();
+		for(int m : modifiers)
+			mask |= m;
 		
+		for(int i = from; i < to; i++)
+			pixels[i] ^= mask;
+	}
+
+	@Override
+	ChannelTransform getChannelTransform(){
 		int mask = 0;
 		
 		for(int m : modifiers)
 			mask |= m;
 		
-		for(int i = range[0]; i <= range[1]; i++){
-			int p = pixels[i];
-			
-			p ^= mask;
-			
-			pixels[i] = p;
-		}
+		return ChannelTransform.xor(mask);
 	}
 
 	@Override
 	public String toString() {
 		return "Invert";
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Provides InvertEffects.
+	 */
+	public static class Provider implements EffectProvider{
+		
+		@Override
+		public String getName(){
+			return NAME;
+		}
+		
+		@Override
+		public AbstractEffect createEffect(int[] modifiers, int[] range){
+			return new InvertEffect(modifiers, range);
+		}
+	}
+}
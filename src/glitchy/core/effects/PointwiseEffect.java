@@ -0,0 +1,39 @@
+package glitchy.core.effects;
+
+import glitchy.core.imageProcessing.PixelStream;
+
+/**
+ * An effect where each pixel's result only depends on that pixel. 
+ * Subclasses only transform arrays of pixels, and are applied a chunk at a time, 
+ * in parallel unless turned off, with progress reports.
+ * @author Aksel
+ */
+public abstract class PointwiseEffect extends AbstractEffect{
+	private static final long serialVersionUID = -3161658826458016240L;
+
+	public PointwiseEffect(int[] modifiers, int[] range) {
+		super(modifiers, range);
+	}
+	
+	/**
+	 * Transforms pixels in place. May be called concurrently, with different arrays.
+	 * @param pixels Pixels.
+	 * @param from First index, inclusive.
+	 * @param to Last index, exclusive.
+	 */
+	protected abstract void applyPointwise(int[] pixels, int from, int to);
+	
+	@Override
+	public void applyEffect(PixelStream pixelStream, EffectMonitor monitor){
+		long from = Math.max(0, range[0]);
+		long to = Math.min(pixelStream.getPixels().length(), range[1] + 1L);
+		
+		if(from < to)
+			EffectController.transform(pixelStream.getPixels(), from, to, this::applyPointwise, monitor);
+	}
+	
+	@Override
+	public AccessPattern getAccessPattern(){
+		return AccessPattern.POINTWISE;
+	}
+}
@@ -0,0 +1,168 @@
+package glitchy.core.effects;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel LSD radix sort for pixels, sorting them as signed integers, like Arrays.sort. 
+ * The pixels are sorted one 8 bit digit at a time. For each digit, every thread counts 
+ * the digits of its own chunk, and then moves its chunk into place, without locking. 
+ * Digits that are the same for every pixel are skipped.
+ * @author Aksel
+ */
+final class RadixSort{
+
+	/**
+	 * Bits per digit.
+	 */
+	private static final int BITS = 8;
+
+	/**
+	 * Number of values a digit can have.
+	 */
+	private static final int RADIX = 1 << BITS;
+
+	/**
+	 * Number of digits in a pixel.
+	 */
+	private static final int DIGITS = 32 / BITS;
+
+	/**
+	 * Minimum number of pixels per thread. Fewer pixels than this are sorted with Arrays.sort.
+	 */
+	private static final int MIN_CHUNK = 1 << 16;
+
+	/**
+	 * Scratch buffer, kept between sorts. Softly referenced, so it does not hold on to memory the program needs.
+	 */
+	private static SoftReference<int[]> cachedScratch;
+
+	private RadixSort(){
+	}
+
+	/**
+	 * Sorts the pixels.
+	 * @param pixels Pixels to sort.
+	 * @param monitor Receives progress, and may cancel the sort. Reported once per digit.
+	 */
+	static void sort(int[] pixels, EffectMonitor monitor){
+		int length = pixels.length;
+
+		if(length < MIN_CHUNK){
+			Arrays.sort(pixels);
+			return;
+		}
+
+		int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), length / MIN_CHUNK));
+
+		//Chunk boundaries
+		int[] bounds = new int[threads + 1];
+		for(int t = 0; t <= threads; t++)
+			bounds[t] = (int) ((long) length * t / threads);
+
+		//Digit counts of each chunk, which then become the chunk's positions in the output
+		int[][] counts = new int[threads][RADIX];
+
+		int[] scratch = takeScratch(length);
+		int[] src = pixels;
+		int[] dst = scratch;
+
+		try{
+			for(int digit = 0; digit < DIGITS; digit++){
+				monitor.progress(digit, DIGITS);
+
+				int shift = digit * BITS;
+
+				//The top digit holds the sign bit. Flipping it puts negative pixels first.
+				int flip = digit == DIGITS - 1 ? RADIX / 2 : 0;
+
+				int[] from = src;
+				int[] to = dst;
+
+				IntStream.range(0, threads).parallel().forEach(t -> {
+					int[] count = counts[t];
+					Arrays.fill(count, 0);
+
+					for(int i = bounds[t]; i < bounds[t + 1]; i++)
+						count[((from[i] >>> shift) & (RADIX - 1)) ^ flip]++;
+				});
+
+				if(isUniform(counts, length))
+					continue;
+
+				//Position of each chunk's first pixel with each digit. Chunks keep their order, so the sort is stable.
+				int position = 0;
+				for(int d = 0; d < RADIX; d++){
+					for(int t = 0; t < threads; t++){
+						int count = counts[t][d];
+						counts[t][d] = position;
+						position += count;
+					}
+				}
+
+				IntStream.range(0, threads).parallel().forEach(t -> {
+					int[] positions = counts[t];
+
+					for(int i = bounds[t]; i < bounds[t + 1]; i++){
+						int pixel = from[i];
+						to[positions[((pixel >>> shift) & (RADIX - 1)) ^ flip]++] = pixel;
+					}
+				});
+
+				src = to;
+				dst = from;
+			}
+
+			if(src != pixels)
+				System.arraycopy(src, 0, pixels, 0, length);
+		} finally{
+			returnScratch(scratch);
+		}
+	}
+
+	/**
+	 * Whether every pixel has the same digit.
+	 * @param counts Digit counts of each chunk.
+	 * @param length Number of pixels.
+	 * @return True if one digit value counts every pixel.
+	 */
+	private static boolean isUniform(int[][] counts, int length){
+		for(int d = 0; d < RADIX; d++){
+			int sum = 0;
+			for(int[] count : counts)
+				sum += count[d];
+
+			if(sum != 0)
+				return sum == length;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Takes the cached scratch buffer, if it is large enough, or allocates a new one.
+	 * @param length Minimum length.
+	 * @return Scratch buffer.
+	 */
+	private static synchronized int[] takeScratch(int length){
+		int[] scratch = cachedScratch == null ? null : cachedScratch.get();
+
+		if(scratch == null || scratch.length < length)
+			return new int[length];
+
+		cachedScratch = null;
+		return scratch;
+	}
+
+	/**
+	 * Caches a scratch buffer for the next sort, unless a larger one is cached.
+	 * @param scratch Scratch buffer.
+	 */
+	private static synchronized void returnScratch(int[] scratch){
+		int[] cached = cachedScratch == null ? null : cachedScratch.get();
+
+		if(cached == null || cached.length < scratch.length)
+			cachedScratch = new SoftReference<>(scratch);
+	}
+}
@@ -1,5 +1,6 @@
 package glitchy.core.effects;
 
+import glitchy.core.imageProcessing.PixelBuffer;
 import glitchy.core.imageProcessing.PixelStream;
 
 /**
@@ -9,6 +10,11 @@ import glitchy.core.imageProcessing.PixelStream;
  */
 public class ReorderEffect extends AbstractEffect{
 	private static final long serialVersionUID = 7196305127500273482L;
+	
+	/**
+	 * Name of the effect, as given by its Provider.
+	 */
+	public static final String NAME = "reorder";
 
 	public ReorderEffect(int[] modifiers, int[] range) {
 		super(modifiers, range);
@@ -16,11 +22,37 @@ public class ReorderEffect extends AbstractEffect{
 
 	/**
 	 * Reorders the channels into the order specified by reorderMasks.
+	 * Orders of whole channels are compiled once into a few masked rotations, 
+	 * see ChannelTransform, and applied a chunk at a time.
+	 * @param pixelStream PixelStream pixelStream
+	 * @param monitor Receives progress, and may cancel the effect.
+	 */
+	public void applyEffect(PixelStream pixelStream, EffectMonitor monitor){
+		
+		ChannelTransform transform = getChannelTransform();
+		
+		if(transform != null){
+			PixelBuffer pixels = pixelStream.getPixels();
+			long from = Math.max(0, range[0]);
+			long to = Math.min(pixels.length(), range[1] + 1L);
+			
+			if(from < to && !transform.isIdentity())
+				EffectController.transform(pixels, from, to, transform::apply, monitor);
+			return;
+		}
+		
+		reorderPixels(pixelStream, monitor);
+	}
+	
+	/**
+	 * Reorders the channels one pixel at a time, moving each channel that has changed position.
+	 * Used for modifiers that are not single channel masks.
 	 * @param pixelStream PixelStream pixelStream
+	 * @param monitor Receives progress, and may cancel the effect.
 	 */
-	public void applyEffect(PixelStream pixelStream){
+	private void reorderPixels(PixelStream pixelStream, EffectMonitor monitor){
 		
-		int[] pixels = pixelStream.getPixels();
+		PixelBuffer pixels = pixelStream.getPixels();
 		
 		//Masks [A , R , G , B]
 		int[] masks = { 0xff000000,
@@ -34,8 +66,13 @@ public class ReorderEffect extends AbstractEffect{
 		int pixel;
 		int reorderedPixel;
 		
+		long total = range[1]+1L - range[0];
+		
 		for(int i = range[0]; i <= range[1]; i++){
-			pixel = pixels[i];
+			if(((i - range[0]) & (EffectMonitor.CHUNK_SIZE - 1)) == 0)
+				monitor.progress(i - range[0], total);
+			
+			pixel = pixels.get(i);
 			reorderedPixel = pixel;
 			
 			for(int mI = 0; mI < masks.length; mI++){
@@ -63,9 +100,42 @@ public class ReorderEffect extends AbstractEffect{
 				
 			}
 			
-			pixels[i] = reorderedPixel;
+			pixels.set(i, reorderedPixel);
+		}
+		
+	}
+	
+	/**
+	 * Reordering moves whole channels, so it is pointwise, as long as every 
+	 * modifier is a single channel's mask.
+	 */
+	@Override
+	ChannelTransform getChannelTransform(){
+		if(modifiers.length != 4)
+			return null;
+		
+		//Modifiers are in A, R, G, B order, while transforms index channels from blue
+		int[] sources = new int[4];
+		
+		for(int mI = 0; mI < 4; mI++){
+			switch(modifiers[mI]){
+			case 0xff000000:
+			case 0x00ff0000:
+			case 0x0000ff00:
+			case 0x000000ff:
+				sources[3 - mI] = getShift(modifiers[mI]) / 8;
+				break;
+			default:
+				return null;
+			}
 		}
 		
+		return ChannelTransform.permutation(sources);
+	}
+	
+	@Override
+	public AccessPattern getAccessPattern(){
+		return AccessPattern.POINTWISE;
 	}
 	
 	@Override
@@ -90,4 +160,20 @@ public class ReorderEffect extends AbstractEffect{
 			return 0;
 		}
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Provides ReorderEffects.
+	 */
+	public static class Provider implements EffectProvider{
+		
+		@Override
+		public String getName(){
+			return NAME;
+		}
+		
+		@Override
+		public AbstractEffect createEffect(int[] modifiers, int[] range){
+			return new ReorderEffect(modifiers, range);
+		}
+	}
+}
@@ -2,6 +2,8 @@ package glitchy.core.effects;
 
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
+
+import glitchy.core.imageProcessing.PixelBuffer;
 import glitchy.core.imageProcessing.PixelStream;
 
 /**
@@ -12,6 +14,11 @@ import glitchy.core.imageProcessing.PixelStream;
  */
 public class ShuffleEffect extends AbstractEffect{
 	private static final long serialVersionUID = 7714560755578789462L;
+	
+	/**
+	 * Name of the effect, as given by its Provider.
+	 */
+	public static final String NAME = "shuffle";
 
 	public ShuffleEffect(int[] modifiers, int[] range) {
 		super(modifiers, range);
@@ -21,13 +28,13 @@ public class ShuffleEffect extends AbstractEffect{
 	 * Shuffles, either by pixels, or each channel independently.
 	 */
 	@Override
-	public void applyEffect(PixelStream pixelStream) {
+	public void applyEffect(PixelStream pixelStream, EffectMonitor monitor) {
 	
 		if(modifiers[0] == -1)
-			shuffle(pixelStream.getPixels());
+			shuffle(pixelStream.getPixels(), monitor);
 
 		else
-			shuffleChannels(pixelStream);
+			shuffleChannels(pixelStream, monitor);
 	}
 	
 	@Override
@@ -38,43 +45,70 @@ public class ShuffleEffect extends AbstractEffect{
 	/**
 	 * Durstenfeld shuffle (from StackOverflow) 
 	 * http://stackoverflow.com/a/1520212
-	 * @param ar Array to shuffle
+	 * @param pixels Buffer to shuffle
+	 * @param monitor Receives progress, and may cancel the effect.
 	 */
-	private void shuffle(int[] ar){
+	private void shuffle(PixelBuffer pixels, EffectMonitor monitor){
 		Random rnd = ThreadLocalRandom.current();
+		long total = range[1]+1L - range[0];
 		
 		for (int i = range[1]; i >= range[0]; i--)
 		{
+			if(((range[1] - i) & (EffectMonitor.CHUNK_SIZE - 1)) == 0)
+				monitor.progress(range[1] - i, total);
+			
 			//Random, offset by range start
 			int index = rnd.nextInt(i+1 - range[0]) + range[0];
 			// Simple swap
-			int a = ar[index];
-			ar[index] = ar[i];
-			ar[i] = a;
+			int a = pixels.get(index);
+			pixels.set(index, pixels.get(i));
+			pixels.set(i, a);
 		}
 	}
 	
 	/**
-	 * Shuffles each channel independently.
+	 * Shuffles each channel independently. 
+	 * Channels are swapped in place, so no copy of the layer is needed.
 	 * @param pixelStream PixelStream to shuffle
+	 * @param monitor Receives progress, and may cancel the effect.
 	 */
-	private void shuffleChannels(PixelStream pixelStream){
-		int[] pixels = pixelStream.getPixels();
+	private void shuffleChannels(PixelStream pixelStream, EffectMonitor monitor){
+		PixelBuffer pixels = pixelStream.getPixels();
+		Random rnd = ThreadLocalRandom.current();
+		long length = range[1]+1L - range[0];
+		long total = length * modifiers.length;
+		long done = 0;
 
 		for(int mask : modifiers){
-			int[] channels = new int[pixels.length];
-
-			//Grab all the channels
-			for(int i = 0; i < pixels.length; i++){
-				channels[i] = (pixels[i] & mask);
-			}
-
-			shuffle(channels);
-
-			//Inserts the channels again
-			for(int i = 0; i < pixels.length; i++){
-				pixels[i] = (pixels[i] & ~mask) | (channels[i]);
+			for (int i = range[1]; i >= range[0]; i--, done++){
+				if((done & (EffectMonitor.CHUNK_SIZE - 1)) == 0)
+					monitor.progress(done, total);
+				
+				//Random, offset by range start
+				int index = rnd.nextInt(i+1 - range[0]) + range[0];
+				
+				//Swap only the masked channel
+				int a = pixels.get(index);
+				int b = pixels.get(i);
+				pixels.set(index, (a & ~mask) | (b & mask));
+				pixels.set(i, (b & ~mask) | (a & mask));
 			}
 		}
 	}
+	
+	/**
+	 * Provides ShuffleEffects.
+	 */
+	public static class Provider implements EffectProvider{
+		
+		@Override
+		public String getName(){
+			return NAME;
+		}
+		
+		@Override
+		public AbstractEffect createEffect(int[] modifiers, int[] range){
+			return new ShuffleEffect(modifiers, range);
+		}
+	}
 }
@@ -1,7 +1,5 @@
 package glitchy.core.effects;
 
-import java.util.Arrays;
-
 import glitchy.core.imageProcessing.PixelStream;
 
 /**
@@ -9,20 +7,122 @@ import glitchy.core.imageProcessing.PixelStream;
  * Pixels slowly fade out to the righ.
  * @author Aksel and Mikkel
  */
-public class SmearEffect extends AbstractEffect{
+public class SmearEffect extends WindowedEffect{
 	private static final long serialVersionUID = 7496330009228186679L;
+	
+	/**
+	 * Name of the effect, as given by its Provider.
+	 */
+	public static final String NAME = "smear";
+	
+	/**
+	 * Third modifier for the classic smear, which walks the entire kernel for every pixel. 
+	 * Smears without a third modifier, e.g. from older projects, are classic.
+	 */
+	public static final int CLASSIC = 0;
+	
+	/**
+	 * Third modifier for the windowed smear, whose cost does not depend on the length.
+	 */
+	public static final int WINDOWED = 1;
+	
+	/**
+	 * Maximum number of blocks of equal intensity the windowed smear splits the kernel into.
+	 */
+	private static final int BLOCKS = 64;
+	
+	/**
+	 * Minimum number of pixels smeared per tile.
+	 */
+	private static final int TILE_SIZE = 1 << 16;
+	
+	/**
+	 * The last kernel created, and the modifiers it was created from.
+	 */
+	private static volatile Kernel cachedKernel;
+	
+	/**
+	 * A classic smear kernel, with the modifiers it was created from.
+	 */
+	private static final class Kernel{
+		final int length;
+		final int intensity;
+		final int[][] values;
+		
+		Kernel(int length, int intensity, int[][] values){
+			this.length = length;
+			this.intensity = intensity;
+			this.values = values;
+		}
+	}
 
 	public SmearEffect(int[] modifiers, int[] range){
 		super(modifiers, range);
 	}
 
 	/**
-	 * Applies a Smear effect to the PixelStream.
+	 * Prepares a Smear effect. 
+	 * Each pixel only depends on the length-1 pixels before it, in the unmodified range, 
+	 * so the range is split into tiles that are smeared independently, in parallel. 
+	 * Each tile reads the pixels before it as well, so the result is the same as in one pass.
 	 */
 	@Override
-	public void applyEffect(PixelStream pixelStream){
-		int[][] kernel = createKernel(modifiers[0] , modifiers[1]);
-		smear(pixelStream, kernel);
+	protected TileFiller prepare(PixelStream pixelStream, int n){
+		int length = modifiers[0];
+		
+		//Kernel offsets run from 1 to length-1
+		if(length < 2 || n < 2)
+			return null;
+		
+		if(isWindowed()){
+			Blocks blocks = new Blocks(length, modifiers[1]);
+			return (source, offset, from, tile) -> smearWindowed(source, offset, tile, blocks);
+		}
+		
+		int[][] kernel = getKernel(length, modifiers[1]);
+		return (source, offset, from, tile) -> smear(source, offset, tile, kernel);
+	}
+	
+	/**
+	 * Each pixel is smeared from the length-1 pixels before it.
+	 */
+	@Override
+	protected int getWindow(){
+		return Math.max(0, modifiers[0] - 1);
+	}
+	
+	/**
+	 * Windowed tiles redo the pixels before them for every block, so they are kept longer than the length.
+	 */
+	@Override
+	protected int getTileSize(){
+		return isWindowed() ? Math.max(TILE_SIZE, 4 * getWindow()) : TILE_SIZE;
+	}
+	
+	/**
+	 * Whether the smear is windowed, rather than classic.
+	 * @return True if windowed.
+	 */
+	private boolean isWindowed(){
+		return modifiers.length > 2 && modifiers[2] == WINDOWED;
+	}
+	
+	/**
+	 * Returns the kernel for the given modifiers. 
+	 * The last kernel is cached, so smears with the same modifiers, e.g. when effects are reapplied, share it.
+	 * @param length Effect's length.
+	 * @param intensity Starting intensity.
+	 * @return Kernel.
+	 */
+	private static int[][] getKernel(int length, int intensity){
+		Kernel kernel = cachedKernel;
+		
+		if(kernel == null || kernel.length != length || kernel.intensity != intensity){
+			kernel = new Kernel(length, intensity, createKernel(length, intensity));
+			cachedKernel = kernel;
+		}
+		
+		return kernel.values;
 	}
 	
 	/**
@@ -31,7 +131,7 @@ public class SmearEffect extends AbstractEffect{
 	 * @param intensity Starting intensity.
 	 * @return Kernel.
 	 */
-	private int[][] createKernel(int length , double intensity){
+	private static int[][] createKernel(int length , double intensity){
 		
 		int[][] kernel = new int[length][256];
 
@@ -58,22 +158,25 @@ public class SmearEffect extends AbstractEffect{
 	}
 	
 	/**
-	 * Smears the given PixelStream's pixels.
-	 * @param pixelStream PixelStream.
+	 * Smears a tile of the source, walking the entire kernel for every pixel.
+	 * @param source Unmodified pixels, of the tile and the pixels before it.
+	 * @param from Index of the tile's first pixel in the source.
+	 * @param smeared The tile, to fill with the smeared pixels.
 	 * @param kernel A kernel with precalculated intensities.
 	 */
-	private void smear(PixelStream pixelStream , int[][] kernel){
-		int[] pixels = pixelStream.getPixels();
-		int[] pixelsRange = Arrays.copyOfRange(pixels, range[0], range[1]+1);
+	private static void smear(int[] source, int from, int[] smeared, int[][] kernel){
+		int to = from + smeared.length;
 		
 		int[] intensities;
 		
 		//Summed channels.
 		int aSum,rSum,gSum,bSum;
 		
-		for(int pI = 0; pI < pixelsRange.length; pI++){
+		for(int pI = from; pI < to; pI++){
+			smeared[pI - from] = source[pI];
+			
 			//If unmodified pixel is already white, the effect will have no effect
-			if(pixelsRange[pI] == 0xffffffff)
+			if(source[pI] == 0xffffffff)
 				continue;
 			
 			//Reset sums
@@ -88,7 +191,7 @@ public class SmearEffect extends AbstractEffect{
 				if(rI < 0)
 					break;
 				
-				pixel = pixelsRange[rI];
+				pixel = source[rI];
 				
 				intensities = kernel[kI];
 				
@@ -99,8 +202,153 @@ public class SmearEffect extends AbstractEffect{
 				bSum |= intensities[ (pixel)       & 0xff];
 			}
 			
-			//Insert modified pixel into original pixels
-			pixels[pI+range[0]] |= (aSum<<24) | (rSum<<16) | (gSum<<8) | (bSum);
+			//Modified pixel
+			smeared[pI - from] |= (aSum<<24) | (rSum<<16) | (gSum<<8) | (bSum);
+		}
+	}
+	
+	/**
+	 * The windowed smear's kernel: blocks of offsets with equal intensity, 
+	 * and each channel level scaled by the block's intensity, and shifted into place.
+	 */
+	private static final class Blocks{
+		
+		/**
+		 * First and last offset of each block, inclusive.
+		 */
+		final int[] first, last;
+		
+		/**
+		 * Scaled channel levels of each block.
+		 */
+		final int[][] a, r, g, b;
+		
+		/**
+		 * Largest offset.
+		 */
+		final int offsets;
+		
+		Blocks(int length, double intensity){
+			offsets = length - 1;
+			int count = Math.min(BLOCKS, offsets);
+			
+			first = new int[count];
+			last = new int[count];
+			a = new int[count][256];
+			r = new int[count][256];
+			g = new int[count][256];
+			b = new int[count][256];
+			
+			//Intensity at each offset, decreasing exactly as in createKernel
+			double[] levels = new double[length];
+			intensity /= 10;
+			double fallOff = intensity / length;
+			
+			for(int k = 1; k < length; k++){
+				levels[k] = intensity;
+				intensity -= fallOff;
+			}
+			
+			for(int block = 0; block < count; block++){
+				first[block] = 1 + (int) ((long) block * offsets / count);
+				last[block] = (int) ((long) (block + 1) * offsets / count);
+				
+				double level = levels[(first[block] + last[block]) >>> 1];
+				for(int j = 0; j < 256; j++){
+					int v = (int) (j * level);
+					a[block][j] = v << 24;
+					r[block][j] = v << 16;
+					g[block][j] = v << 8;
+					b[block][j] = v;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Smears a tile of the source, with a cost per pixel that does not depend on the length. 
+	 * The smear ORs each pixel with its predecessors' channels, scaled by intensity. Since OR is 
+	 * associative, the kernel is split into up to BLOCKS blocks of equal intensity, the intensity 
+	 * at each block's middle, and each block becomes an OR over a sliding window of pixels. 
+	 * Sliding windows are computed with the van Herk/Gil-Werman algorithm: the pixels are split into 
+	 * segments as long as the window, and each window is the OR of a suffix of one segment, and a 
+	 * prefix of the next. That is a constant amount of work per pixel, for each block. 
+	 * Lengths up to BLOCKS + 1 have one offset per block, and match the classic smear.
+	 * @param source Unmodified pixels, of the tile and the pixels before it.
+	 * @param from Index of the tile's first pixel in the source.
+	 * @param tile The tile, to fill with the smeared pixels.
+	 * @param blocks The kernel's blocks.
+	 */
+	private static void smearWindowed(int[] source, int from, int[] tile, Blocks blocks){
+		int to = from + tile.length;
+		
+		//Pixels before the tile that smear onto it
+		int start = Math.max(0, from - blocks.offsets);
+		int n = to - start;
+		
+		//OR of every block, for each pixel
+		int[] smeared = new int[n];
+		
+		//OR from each pixel to the end of its segment
+		int[] suffix = new int[n];
+		
+		for(int block = 0; block < blocks.first.length; block++){
+			int first = blocks.first[block];
+			int width = blocks.last[block] - first + 1;
+			
+			int[] a = blocks.a[block], r = blocks.r[block], g = blocks.g[block], b = blocks.b[block];
+			
+			for(int i = n-1; i >= 0; i--){
+				int p = source[start + i];
+				int t = a[p >>> 24] | r[(p >> 16) & 0xff] | g[(p >> 8) & 0xff] | b[p & 0xff];
+				
+				//Last pixel of a segment
+				if((i + 1) % width == 0 || i == n-1)
+					suffix[i] = t;
+				else
+					suffix[i] = t | suffix[i+1];
+			}
+			
+			//Window [end - width + 1, end] smears onto pixel end + first
+			int prefix = 0;
+			for(int end = 0; end + first < n; end++){
+				int p = source[start + end];
+				int t = a[p >>> 24] | r[(p >> 16) & 0xff] | g[(p >> 8) & 0xff] | b[p & 0xff];
+				
+				//First pixel of a segment
+				if(end % width == 0)
+					prefix = t;
+				else
+					prefix |= t;
+				
+				int windowStart = end - width + 1;
+				
+				//Windows cut off by the start of the pixels lie within the first segment
+				if(windowStart <= 0)
+					smeared[end + first] |= prefix;
+				else
+					smeared[end + first] |= suffix[windowStart] | prefix;
+			}
+		}
+		
+		//Only the tile itself is filled. Windows of pixels before it may have been cut off.
+		for(int i = from; i < to; i++)
+			tile[i - from] = source[i] | smeared[i - start];
+	}
+	
+	/**
+	 * Provides SmearEffects.
+	 */
+	public static class Provider implements EffectProvider{
+		
+		@Override
+		public String getName(){
+			return NAME;
+		}
+		
+		@Override
+		public AbstractEffect createEffect(int[] modifiers, int[] range){
+			return new SmearEffect(modifiers, range);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -1,30 +1,49 @@
 package glitchy.core.effects;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import glitchy.core.imageProcessing.PixelBuffer;
 import glitchy.core.imageProcessing.PixelStream;
 
 /**
  * This effect can sort a PixelStream's pixels. Can both sort 
- * by pixel integer values, and each colorchannel independently.
+ * by pixel integer values, and each colorchannel independently. 
+ * Can also sort pixels by luminance, hue or saturation, within 
+ * the intervals where that key is between two thresholds.
  * @author Aksel and Mikkel
  */
 public class SortEffect extends AbstractEffect{
 	private static final long serialVersionUID = 3986405714868712920L;
+	
+	/**
+	 * Name of the effect, as given by its Provider.
+	 */
+	public static final String NAME = "sort";
+
+	/**
+	 * First modifier, when sorting by key. Followed by the key, and the low and high thresholds.
+	 */
+	public static final int SORT_BY_KEY = -2;
 
 	public SortEffect(int[] modifiers, int[] range) {
 		super(modifiers, range);
 	}
 
 	/**
-	 * Sorts the PixelStream, either by pixels, or each channel independently.
+	 * Sorts the PixelStream, either by pixels, by key, or each channel independently.
 	 */
 	@Override
-	public void applyEffect(PixelStream pixelStream) {
+	public void applyEffect(PixelStream pixelStream, EffectMonitor monitor) {
 		if(modifiers[0] == -1)
-			sortPixels(pixelStream);
+			sortPixels(pixelStream, monitor);
+		
+		else if(modifiers[0] == SORT_BY_KEY)
+			sortByKey(pixelStream, monitor);
 
 		else
-			sortChannels(pixelStream);
+			sortChannels(pixelStream, monitor);
 	}
 
 	@Override
@@ -33,20 +52,110 @@ public class SortEffect extends AbstractEffect{
 	}
 	
 	/**
-	 * Sorts each channel independently.
+	 * Sorts each channel independently. 
+	 * Channels only have 256 levels, so they are counting sorted: one pass counts 
+	 * the levels of every channel, and another writes them back in order.
 	 * @param pixelStream PixelStream pixelStream.
+	 * @param monitor Receives progress, and may cancel the effect.
 	 */
-	private void sortChannels(PixelStream pixelStream){
-		int[] pixels = pixelStream.getPixels();
+	private void sortChannels(PixelStream pixelStream, EffectMonitor monitor){
+		PixelBuffer pixels = pixelStream.getPixels();
+		int length = range[1]-range[0];
+		int channels = modifiers.length;
+		
+		//Position of each channel
+		int[] shifts = new int[channels];
+		
+		//Masked values are compared as signed integers, so the upper half of the alpha channel comes first.
+		//Flipping the top bit of a level gives its position in that order.
+		int[] flips = new int[channels];
+		
+		for(int c = 0; c < channels; c++){
+			int mask = modifiers[c];
+			int shift = Integer.numberOfTrailingZeros(mask);
+			
+			//Only whole 8 bit channels can be counted
+			if(mask == 0 || (mask >>> shift) != 0xff){
+				sortMaskedValues(pixelStream, monitor);
+				return;
+			}
+			
+			shifts[c] = shift;
+			flips[c] = mask < 0 ? 0x80 : 0;
+		}
+		
+		int[][] counts = new int[channels][256];
+		int[] chunk = new int[Math.min(length, EffectMonitor.CHUNK_SIZE)];
+		long total = 2L * length;
+		
+		//Count the levels of every channel
+		for(int start = 0; start < length; start += chunk.length){
+			monitor.progress(start, total);
+			
+			int n = Math.min(chunk.length, length - start);
+			pixels.get(range[0] + start, chunk, 0, n);
+			
+			for(int c = 0; c < channels; c++){
+				int[] count = counts[c];
+				int shift = shifts[c];
+				int flip = flips[c];
+				
+				for(int i = 0; i < n; i++)
+					count[((chunk[i] >>> shift) & 0xff) ^ flip]++;
+			}
+		}
+		
+		//Current level of each channel, and how many of it are left to write
+		int[] level = new int[channels];
+		int[] left = new int[channels];
+		
+		for(int c = 0; c < channels; c++)
+			left[c] = counts[c][0];
+		
+		//Write the levels back in order
+		for(int start = 0; start < length; start += chunk.length){
+			monitor.progress(length + start, total);
+			
+			int n = Math.min(chunk.length, length - start);
+			pixels.get(range[0] + start, chunk, 0, n);
+			
+			for(int c = 0; c < channels; c++){
+				int[] count = counts[c];
+				int mask = modifiers[c];
+				
+				for(int i = 0; i < n; i++){
+					while(left[c] == 0)
+						left[c] = count[++level[c]];
+					
+					left[c]--;
+					chunk[i] = (chunk[i] & ~mask) | ((level[c] ^ flips[c]) << shifts[c]);
+				}
+			}
+			
+			pixels.put(range[0] + start, chunk, 0, n);
+		}
+	}
+	
+	/**
+	 * Sorts the values under each mask independently, by comparison. 
+	 * Used for masks that are not a single 8 bit channel.
+	 * @param pixelStream PixelStream pixelStream.
+	 * @param monitor Receives progress, and may cancel the effect.
+	 */
+	private void sortMaskedValues(PixelStream pixelStream, EffectMonitor monitor){
+		PixelBuffer pixels = pixelStream.getPixels();
 		
 		//For each color channel mask
-		for(int mask : modifiers){
+		for(int m = 0; m < modifiers.length; m++){
+			int mask = modifiers[m];
+			monitor.progress(m, modifiers.length);
+			
 			int[] channelValues = new int[range[1]-range[0]];
 			
 			//Grab all the channel values
 			for(int i = 0; i < channelValues.length; i++){
 				int pixelIndex = i + range[0];
-				channelValues[i] = (pixels[pixelIndex] & mask);
+				channelValues[i] = (pixels.get(pixelIndex) & mask);
 			}
 			
 			Arrays.sort(channelValues);
@@ -54,7 +163,7 @@ public class SortEffect extends AbstractEffect{
 			//Insert the channel values
 			for(int i = 0; i < channelValues.length; i++){
 				int pixelIndex = i + range[0];
-				pixels[pixelIndex] = (pixels[pixelIndex] & ~mask) | (channelValues[i]);
+				pixels.set(pixelIndex, (pixels.get(pixelIndex) & ~mask) | (channelValues[i]));
 			}
 		}
 	}
@@ -62,15 +171,113 @@ public class SortEffect extends AbstractEffect{
 	/**
 	 * Sorts a PixelStream's pixels by their integer value.
 	 * @param pixelStream PixelStream to sort.
+	 * @param monitor Receives progress, and may cancel the effect.
 	 */
-	private void sortPixels(PixelStream pixelStream){
+	private void sortPixels(PixelStream pixelStream, EffectMonitor monitor){
 		//Get subarray, determined by selection range.
-		int[] pixels = pixelStream.getPixels();
-		int[] sorted = Arrays.copyOfRange(pixels, range[0], range[1]+1);
+		PixelBuffer pixels = pixelStream.getPixels();
+		int[] sorted = new int[range[1]+1 - range[0]];
+		pixels.get(range[0], sorted, 0, sorted.length);
 
-		Arrays.sort(sorted);
-			
+		//Sorts the copy, so the pixels are untouched if the sort is cancelled
+		RadixSort.sort(sorted, monitor);
+		
 		//Insert the sorted subarray.
-		System.arraycopy(sorted, 0, pixels, range[0], sorted.length);
+		pixels.put(range[0], sorted, 0, sorted.length);
+	}
+	
+	/**
+	 * Sorts pixels by luminance, hue or saturation. Only intervals of consecutive pixels, 
+	 * whose keys are between the low and high thresholds, are sorted, each on its own. 
+	 * Keys are 8 bit, so each interval is counting sorted, which keeps equal keys in order. 
+	 * Keys are extracted, and intervals sorted, in parallel.
+	 * @param pixelStream PixelStream to sort.
+	 * @param monitor Receives progress, and may cancel the effect.
+	 */
+	private void sortByKey(PixelStream pixelStream, EffectMonitor monitor){
+		int key = modifiers[1];
+		int low = modifiers[2];
+		int high = modifiers[3];
+		
+		PixelBuffer pixels = pixelStream.getPixels();
+		int length = range[1]+1 - range[0];
+		int[] source = new int[length];
+		pixels.get(range[0], source, 0, length);
+		
+		//Key extraction, then sorting, counted in pixels
+		long total = 2L * length;
+		AtomicLong done = new AtomicLong();
+		
+		byte[] keys = new byte[length];
+		int chunks = (length + EffectMonitor.CHUNK_SIZE - 1) / EffectMonitor.CHUNK_SIZE;
+		
+		EffectController.runTasks(chunks, c -> {
+			int from = c * EffectMonitor.CHUNK_SIZE;
+			int to = Math.min(length, from + EffectMonitor.CHUNK_SIZE);
+			
+			SortKeys.extract(key, source, from, to, keys);
+			monitor.progress(done.addAndGet(to - from), total);
+		});
+		
+		//Intervals, as {start, end}, where every key is within the thresholds
+		ArrayList<int[]> intervals = new ArrayList<>();
+		int start = -1;
+		
+		for(int i = 0; i <= length; i++){
+			boolean inside = i < length && (keys[i] & 0xff) >= low && (keys[i] & 0xff) <= high;
+			
+			if(inside && start < 0)
+				start = i;
+			
+			else if(!inside && start >= 0){
+				if(i - start > 1)
+					intervals.add(new int[]{start, i});
+				start = -1;
+			}
+		}
+		
+		//Intervals do not overlap, so they can be sorted into the same array at once
+		int[] sorted = new int[length];
+		
+		EffectController.runTasks(intervals.size(), n -> {
+			int[] interval = intervals.get(n);
+			int from = interval[0];
+			int to = interval[1];
+			
+			int[] positions = new int[256];
+			for(int i = from; i < to; i++)
+				positions[keys[i] & 0xff]++;
+			
+			int position = from;
+			for(int k = 0; k < 256; k++){
+				int count = positions[k];
+				positions[k] = position;
+				position += count;
+			}
+			
+			for(int i = from; i < to; i++)
+				sorted[positions[keys[i] & 0xff]++] = source[i];
+			
+			monitor.progress(done.addAndGet(to - from), total);
+		});
+		
+		for(int[] interval : intervals)
+			pixels.put(range[0] + interval[0], sorted, interval[0], interval[1] - interval[0]);
+	}
+	
+	/**
+	 * Provides SortEffects.
+	 */
+	public static class Provider implements EffectProvider{
+		
+		@Override
+		public String getName(){
+			return NAME;
+		}
+		
+		@Override
+		public AbstractEffect createEffect(int[] modifiers, int[] range){
+			return new SortEffect(modifiers, range);
+		}
 	}
-}
\ No newline at end of file
+}
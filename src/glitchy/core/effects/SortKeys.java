@@ -0,0 +1,128 @@
+package glitchy.core.effects;
+
+/**
+ * Extracts 8 bit sort keys from pixels, with lookup tables rather than 
+ * floating point math, or Color objects.
+ * @author Aksel
+ */
+final class SortKeys{
+
+	/**
+	 * Sort by luminance.
+	 */
+	static final int LUMINANCE = 0;
+
+	/**
+	 * Sort by hue.
+	 */
+	static final int HUE = 1;
+
+	/**
+	 * Sort by saturation.
+	 */
+	static final int SATURATION = 2;
+
+	/**
+	 * Luminance of each channel level, in 16.16 fixed point. 
+	 * Rec. 601 weights: 0.299 R + 0.587 G + 0.114 B, which sum to exactly 1.
+	 */
+	private static final int[] LUMA_R = new int[256], LUMA_G = new int[256], LUMA_B = new int[256];
+
+	/**
+	 * 1 / n, in 16.16 fixed point, rounded up.
+	 */
+	private static final int[] RECIPROCAL = new int[256];
+
+	static{
+		for(int i = 0; i < 256; i++){
+			LUMA_R[i] = i * 19595;
+			LUMA_G[i] = i * 38470;
+			LUMA_B[i] = i * 7471;
+
+			if(i > 0)
+				RECIPROCAL[i] = ((1 << 16) + i - 1) / i;
+		}
+	}
+
+	private SortKeys(){
+	}
+
+	/**
+	 * Extracts the keys of pixels [from, to).
+	 * @param key LUMINANCE, HUE or SATURATION.
+	 * @param pixels Pixels.
+	 * @param from First index, inclusive.
+	 * @param to Last index, exclusive.
+	 * @param keys Receives the keys, at the same indices as the pixels.
+	 */
+	static void extract(int key, int[] pixels, int from, int to, byte[] keys){
+		switch(key){
+
+		case LUMINANCE:
+			for(int i = from; i < to; i++){
+				int p = pixels[i];
+				keys[i] = (byte) ((LUMA_R[(p >> 16) & 0xff] + LUMA_G[(p >> 8) & 0xff] + LUMA_B[p & 0xff] + (1 << 15)) >>> 16);
+			}
+			break;
+
+		case HUE:
+			for(int i = from; i < to; i++)
+				keys[i] = (byte) hue(pixels[i]);
+			break;
+
+		case SATURATION:
+			for(int i = from; i < to; i++)
+				keys[i] = (byte) saturation(pixels[i]);
+			break;
+
+		default:
+			throw new IllegalArgumentException("Illegal sort key: " + key);
+		}
+	}
+
+	/**
+	 * Returns a pixel's hue, scaled from 0-360 degrees to 0-255.
+	 * @param p Pixel.
+	 * @return Hue. 0 for grey pixels.
+	 */
+	private static int hue(int p){
+		int r = (p >> 16) & 0xff;
+		int g = (p >> 8) & 0xff;
+		int b = p & 0xff;
+
+		int max = Math.max(r, Math.max(g, b));
+		int min = Math.min(r, Math.min(g, b));
+		int delta = max - min;
+
+		if(delta == 0)
+			return 0;
+
+		//Hue in sixths of the color wheel, 256 steps per sixth
+		int h;
+		if(max == r)
+			h = ((g - b) * RECIPROCAL[delta]) >> 8;
+		else if(max == g)
+			h = 2 * 256 + (((b - r) * RECIPROCAL[delta]) >> 8);
+		else
+			h = 4 * 256 + (((r - g) * RECIPROCAL[delta]) >> 8);
+
+		//Wrap negative reds around, and scale six sixths down to 256 steps
+		return ((h + 6 * 256) % (6 * 256)) / 6;
+	}
+
+	/**
+	 * Returns a pixel's saturation, as in HSV.
+	 * @param p Pixel.
+	 * @return Saturation, 0-255.
+	 */
+	private static int saturation(int p){
+		int r = (p >> 16) & 0xff;
+		int g = (p >> 8) & 0xff;
+		int b = p & 0xff;
+
+		int max = Math.max(r, Math.max(g, b));
+		int min = Math.min(r, Math.min(g, b));
+
+		return ((max - min) * 255 * RECIPROCAL[max]) >>> 16;
+	}
+}
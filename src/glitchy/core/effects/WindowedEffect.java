@@ -0,0 +1,70 @@
+package glitchy.core.effects;
+
+import glitchy.core.imageProcessing.PixelStream;
+
+/**
+ * An effect where each pixel's result only depends on the unmodified pixels of the range,
+ * up to a number of pixels before it, its window.
+ * Subclasses only fill tiles of the range, and are applied a tile at a time,
+ * in parallel unless turned off, with progress reports.
+ * Effects with a bounded window are bounded window effects, and each tile only reads
+ * the window before it. Effects with an unbounded window are global, and every tile
+ * reads a copy of the whole range.
+ * @author Aksel
+ */
+public abstract class WindowedEffect extends AbstractEffect{
+	private static final long serialVersionUID = 5467308011719823451L;
+
+	public WindowedEffect(int[] modifiers, int[] range) {
+		super(modifiers, range);
+	}
+
+	/**
+	 * Fills a tile of the range, from the unmodified pixels.
+	 */
+	interface TileFiller{
+
+		/**
+		 * Fills a tile. May be called concurrently, with different tiles.
+		 * @param source Unmodified pixels. Those of the tile, and of the window before it,
+		 * or of the whole range if the window is unbounded.
+		 * @param offset Index in source of the tile's first pixel.
+		 * @param from Index of the tile's first pixel, relative to the range.
+		 * @param tile The tile to fill.
+		 */
+		void fill(int[] source, int offset, int from, int[] tile);
+	}
+
+	/**
+	 * Returns how many pixels before each pixel its result depends on, with the current modifiers.
+	 * @return Window, or -1 if any pixel may depend on any other pixel.
+	 */
+	protected abstract int getWindow();
+
+	/**
+	 * Returns the number of pixels per tile. Tiles re-read the window before them,
+	 * so effects with large windows may want larger tiles.
+	 * @return Tile size.
+	 */
+	protected int getTileSize(){
+		return EffectMonitor.CHUNK_SIZE;
+	}
+
+	/**
+	 * Prepares the effect for the pixelstream, before any pixel is modified.
+	 * @param pixelStream PixelStream the effect is applied to.
+	 * @param length Length of the range.
+	 * @return Filler of the range's tiles, or null if the effect does not change any pixel.
+	 */
+	protected abstract TileFiller prepare(PixelStream pixelStream, int length);
+
+	@Override
+	public void applyEffect(PixelStream pixelStream, EffectMonitor monitor){
+		EffectController.applyTiled(pixelStream, this, monitor);
+	}
+
+	@Override
+	public AccessPattern getAccessPattern(){
+		return getWindow() < 0 ? AccessPattern.GLOBAL : AccessPattern.BOUNDED_WINDOW;
+	}
+}
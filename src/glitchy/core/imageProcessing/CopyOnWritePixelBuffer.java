@@ -0,0 +1,215 @@
+package glitchy.core.imageProcessing;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A working copy of another PixelBuffer, split into fixed-size pages.
+ * Pages are shared with the source until written to, at which point only
+ * that page is copied. The source is never modified.
+ * Resetting the copy only drops the pages that were written to.
+ * Pages are allocated on the same backend as the source, so the copy of an 
+ * off-heap source stays off-heap.
+ * @author Aksel
+ */
+public class CopyOnWritePixelBuffer implements PixelBuffer{
+	private static final long serialVersionUID = -5395436211406651427L;
+
+	/**
+	 * Page size, as a power of two. 2^14 pixels, i.e. 64kb per page.
+	 */
+	static final int PAGE_SHIFT = 14;
+
+	/**
+	 * Number of pixels per page.
+	 */
+	static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+	/**
+	 * Masks out the index within a page.
+	 */
+	static final long PAGE_MASK = PAGE_SIZE - 1;
+
+	/**
+	 * The shared, unmodified pixels.
+	 */
+	private final PixelBuffer source;
+
+	/**
+	 * Copied pages. A null page is read straight from the source.
+	 */
+	private final AtomicReferenceArray<PixelBuffer> pages;
+
+	/**
+	 * Indices of the pages that have been copied, in the order they were copied.
+	 */
+	private int[] touched = new int[16];
+
+	/**
+	 * Number of copied pages.
+	 */
+	private int touchedCount;
+
+	/**
+	 * Constructs a working copy of the given buffer. Nothing is copied yet.
+	 * @param source Buffer to copy on write.
+	 */
+	public CopyOnWritePixelBuffer(PixelBuffer source){
+		this.source = source;
+		pages = new AtomicReferenceArray<>((int) ((source.length() + PAGE_MASK) >>> PAGE_SHIFT));
+	}
+
+	/**
+	 * Returns the shared source buffer.
+	 * @return Source.
+	 */
+	public PixelBuffer getSource(){
+		return source;
+	}
+
+	/**
+	 * Drops every copied page, such that this buffer equals its source again.
+	 * Only touches pages that have been written to.
+	 */
+	public synchronized void reset(){
+		for(int i = 0; i < touchedCount; i++)
+			pages.set(touched[i], null);
+
+		touchedCount = 0;
+	}
+
+	/**
+	 * Returns the number of pages that have been copied.
+	 * @return Number of copied pages.
+	 */
+	public synchronized int getTouchedPages(){
+		return touchedCount;
+	}
+
+	@Override
+	public long length(){
+		return source.length();
+	}
+
+	@Override
+	public int get(long index){
+		PixelBuffer page = pages.get((int) (index >>> PAGE_SHIFT));
+
+		if(page == null)
+			return source.get(index);
+
+		return page.get(index & PAGE_MASK);
+	}
+
+	@Override
+	public void set(long index, int pixel){
+		writablePage((int) (index >>> PAGE_SHIFT)).set(index & PAGE_MASK, pixel);
+	}
+
+	@Override
+	public void get(long index, int[] dst, int offset, int length){
+		while(length > 0){
+			int pageIndex = (int) (index >>> PAGE_SHIFT);
+			int inPage = (int) (index & PAGE_MASK);
+
+			//Copy up to the end of the current page
+			int n = Math.min(length, PAGE_SIZE - inPage);
+
+			PixelBuffer page = pages.get(pageIndex);
+			if(page == null)
+				source.get(index, dst, offset, n);
+			else
+				page.get(inPage, dst, offset, n);
+
+			index += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	@Override
+	public void put(long index, int[] src, int offset, int length){
+		while(length > 0){
+			int inPage = (int) (index & PAGE_MASK);
+			int n = Math.min(length, PAGE_SIZE - inPage);
+
+			writablePage((int) (index >>> PAGE_SHIFT)).put(inPage, src, offset, n);
+
+			index += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	@Override
+	public void fill(long from, long to, int pixel){
+		while(from < to){
+			int inPage = (int) (from & PAGE_MASK);
+			int n = (int) Math.min(to - from, PAGE_SIZE - inPage);
+
+			writablePage((int) (from >>> PAGE_SHIFT)).fill(inPage, inPage + n, pixel);
+
+			from += n;
+		}
+	}
+
+	@Override
+	public PixelBuffer copyOfRange(long from, long to){
+		PixelBuffer copy = PixelBuffers.allocate(to - from);
+		PixelBuffers.copy(this, from, copy, 0, to - from);
+		return copy;
+	}
+
+	/**
+	 * Returns the page at the given page index, copying it from the source first,
+	 * if it has not been written to yet.
+	 * @param pageIndex Page index.
+	 * @return Writable page.
+	 */
+	private PixelBuffer writablePage(int pageIndex){
+		PixelBuffer page = pages.get(pageIndex);
+
+		if(page != null)
+			return page;
+
+		synchronized(this){
+			//Another thread may have copied the page in the meantime
+			page = pages.get(pageIndex);
+			if(page != null)
+				return page;
+
+			long start = (long) pageIndex << PAGE_SHIFT;
+			long length = Math.min(PAGE_SIZE, source.length() - start);
+			page = PixelBuffers.allocateLike(source, length);
+			PixelBuffers.copy(source, start, page, 0, length);
+
+			if(touchedCount == touched.length)
+				touched = Arrays.copyOf(touched, touchedCount * 2);
+			touched[touchedCount++] = pageIndex;
+
+			pages.set(pageIndex, page);
+			return page;
+		}
+	}
+
+	/**
+	 * Reads the buffer, wrapping pages that were saved as int arrays.
+	 * @param in Stream.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+
+		AtomicReferenceArray<?> saved = pages;
+
+		for(int i = 0; i < touchedCount; i++){
+			Object page = saved.get(touched[i]);
+
+			if(page instanceof int[])
+				pages.set(touched[i], PixelBuffers.wrap((int[]) page));
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package glitchy.core.imageProcessing;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * PixelBuffer backed by a direct ByteBuffer, outside of the Java heap. 
+ * Large layers stored this way are not moved or scanned by the garbage collector.
+ * Limited to MAX_LENGTH pixels, use SegmentedPixelBuffer for larger buffers.
+ * @author Aksel
+ */
+public class DirectPixelBuffer implements PixelBuffer{
+	private static final long serialVersionUID = 4412297245862178342L;
+
+	/**
+	 * Largest number of pixels a single direct buffer can hold.
+	 */
+	public static final int MAX_LENGTH = Integer.MAX_VALUE / 4;
+
+	/**
+	 * Off-heap pixels. Not serialized directly, see writeObject.
+	 */
+	private transient IntBuffer pixels;
+
+	/**
+	 * Constructs an empty buffer, with the desired number of pixels.
+	 * @param length Number of pixels.
+	 */
+	public DirectPixelBuffer(int length){
+		if(length < 0 || length > MAX_LENGTH)
+			throw new IllegalArgumentException("Illegal direct buffer length: " + length);
+
+		pixels = ByteBuffer.allocateDirect(length * 4)
+				.order(ByteOrder.nativeOrder())
+				.asIntBuffer();
+	}
+
+	@Override
+	public long length(){
+		return pixels.capacity();
+	}
+
+	@Override
+	public int get(long index){
+		return pixels.get((int) index);
+	}
+
+	@Override
+	public void set(long index, int pixel){
+		pixels.put((int) index, pixel);
+	}
+
+	@Override
+	public void get(long index, int[] dst, int offset, int length){
+		IntBuffer view = pixels.duplicate();
+		view.position((int) index);
+		view.get(dst, offset, length);
+	}
+
+	@Override
+	public void put(long index, int[] src, int offset, int length){
+		IntBuffer view = pixels.duplicate();
+		view.position((int) index);
+		view.put(src, offset, length);
+	}
+
+	@Override
+	public void fill(long from, long to, int pixel){
+		for(int i = (int) from; i < to; i++)
+			pixels.put(i, pixel);
+	}
+
+	@Override
+	public PixelBuffer copyOfRange(long from, long to){
+		PixelBuffer copy = PixelBuffers.allocate(to - from);
+		PixelBuffers.copy(this, from, copy, 0, to - from);
+		return copy;
+	}
+
+	/**
+	 * Writes the pixels in chunks, since direct buffers are not serializable.
+	 * @param out Stream.
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		out.defaultWriteObject();
+		PixelBuffers.writePixels(this, out);
+	}
+
+	/**
+	 * Allocates a new direct buffer, and reads the pixels back in chunks.
+	 * @param in Stream.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		int length = (int) in.readLong();
+		pixels = ByteBuffer.allocateDirect(length * 4)
+				.order(ByteOrder.nativeOrder())
+				.asIntBuffer();
+		PixelBuffers.readPixels(this, length, in);
+	}
+}
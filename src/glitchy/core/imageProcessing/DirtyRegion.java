@@ -0,0 +1,147 @@
+package glitchy.core.imageProcessing;
+
+import java.util.ArrayList;
+
+/**
+ * A set of pixel index intervals that have changed since they were last rendered.
+ * Intervals are half-open, [start, end).
+ * @author Aksel
+ */
+public class DirtyRegion{
+
+	/**
+	 * Number of intervals, after which they are merged as they are added.
+	 */
+	private static final int MERGE_THRESHOLD = 256;
+
+	/**
+	 * Intervals, as {start, end}.
+	 */
+	private ArrayList<long[]> spans = new ArrayList<>();
+
+	/**
+	 * Whether everything is dirty.
+	 */
+	private boolean all;
+
+	/**
+	 * Marks an interval as dirty.
+	 * @param start Start index, inclusive.
+	 * @param end End index, exclusive.
+	 */
+	public synchronized void add(long start, long end){
+		if(all || start >= end)
+			return;
+
+		spans.add(new long[]{start, end});
+
+		if(spans.size() > MERGE_THRESHOLD){
+			spans = merge(spans);
+			
+			//Still too many, so settle for the interval that covers them all
+			if(spans.size() > MERGE_THRESHOLD){
+				long[] bounds = {spans.get(0)[0], spans.get(spans.size() - 1)[1]};
+				spans.clear();
+				spans.add(bounds);
+			}
+		}
+	}
+
+	/**
+	 * Marks every interval in another region as dirty, and clears the other region.
+	 * @param region Region to move into this one.
+	 */
+	public void addAll(DirtyRegion region){
+		boolean regionAll;
+		ArrayList<long[]> regionSpans;
+
+		synchronized(region){
+			regionAll = region.all;
+			regionSpans = region.spans;
+			region.all = false;
+			region.spans = new ArrayList<>();
+		}
+
+		if(regionAll)
+			markAll();
+		else
+			for(long[] span : regionSpans)
+				add(span[0], span[1]);
+	}
+
+	/**
+	 * Marks everything as dirty.
+	 */
+	public synchronized void markAll(){
+		all = true;
+		spans.clear();
+	}
+
+	/**
+	 * Whether everything is dirty.
+	 * @return True if everything is dirty.
+	 */
+	public synchronized boolean isAll(){
+		return all;
+	}
+
+	/**
+	 * Whether nothing is dirty.
+	 * @return True if nothing is dirty.
+	 */
+	public synchronized boolean isEmpty(){
+		return !all && spans.isEmpty();
+	}
+
+	/**
+	 * Returns the dirty intervals, sorted and merged, and clears the region.
+	 * Returns a single interval covering [0, length), if everything is dirty.
+	 * @param length Total number of pixels. Intervals are clipped to [0, length).
+	 * @return Sorted, non-overlapping intervals.
+	 */
+	public synchronized ArrayList<int[]> take(int length){
+		ArrayList<int[]> result = new ArrayList<>();
+
+		if(all){
+			if(length > 0)
+				result.add(new int[]{0, length});
+		}
+
+		else{
+			for(long[] span : merge(spans)){
+				int start = (int) Math.max(0, span[0]);
+				int end = (int) Math.min(length, span[1]);
+
+				if(start < end)
+					result.add(new int[]{start, end});
+			}
+		}
+
+		all = false;
+		spans = new ArrayList<>();
+
+		return result;
+	}
+
+	/**
+	 * Sorts and merges overlapping and adjacent intervals.
+	 * @param spans Intervals.
+	 * @return Sorted, non-overlapping intervals.
+	 */
+	private static ArrayList<long[]> merge(ArrayList<long[]> spans){
+		spans.sort((a, b) -> Long.compare(a[0], b[0]));
+
+		ArrayList<long[]> merged = new ArrayList<>();
+
+		for(long[] span : spans){
+			long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+
+			if(last != null && span[0] <= last[1])
+				last[1] = Math.max(last[1], span[1]);
+			else
+				merged.add(new long[]{span[0], span[1]});
+		}
+
+		return merged;
+	}
+}
@@ -0,0 +1,76 @@
+package glitchy.core.imageProcessing;
+
+import java.util.Arrays;
+
+/**
+ * PixelBuffer backed by an int array on the Java heap.
+ * Limited to the size of a Java array.
+ * @author Aksel
+ */
+public class HeapPixelBuffer implements PixelBuffer{
+	private static final long serialVersionUID = -2207411834150574826L;
+
+	/**
+	 * Array of pixels.
+	 */
+	private final int[] pixels;
+
+	/**
+	 * Constructs an empty buffer, with the desired number of pixels.
+	 * @param length Number of pixels.
+	 */
+	public HeapPixelBuffer(int length){
+		this(new int[length]);
+	}
+
+	/**
+	 * Wraps an int array. The array is not copied.
+	 * @param pixels Packed integers.
+	 */
+	public HeapPixelBuffer(int[] pixels){
+		this.pixels = pixels;
+	}
+
+	/**
+	 * Returns the backing array.
+	 * @return Array of pixels.
+	 */
+	public int[] array(){
+		return pixels;
+	}
+
+	@Override
+	public long length(){
+		return pixels.length;
+	}
+
+	@Override
+	public int get(long index){
+		return pixels[(int) index];
+	}
+
+	@Override
+	public void set(long index, int pixel){
+		pixels[(int) index] = pixel;
+	}
+
+	@Override
+	public void get(long index, int[] dst, int offset, int length){
+		System.arraycopy(pixels, (int) index, dst, offset, length);
+	}
+
+	@Override
+	public void put(long index, int[] src, int offset, int length){
+		System.arraycopy(src, offset, pixels, (int) index, length);
+	}
+
+	@Override
+	public void fill(long from, long to, int pixel){
+		Arrays.fill(pixels, (int) from, (int) to, pixel);
+	}
+
+	@Override
+	public PixelBuffer copyOfRange(long from, long to){
+		return new HeapPixelBuffer(Arrays.copyOfRange(pixels, (int) from, (int) to));
+	}
+}
@@ -1,11 +1,12 @@
 package glitchy.core.imageProcessing;
 
-import glitchy.core.effects.Effect;
 import glitchy.core.effects.EffectController;
+import glitchy.core.effects.EffectMonitor;
 
 import java.awt.image.BufferedImage;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.function.Function;
 
 /**
  * Controls PixelStreams. 
@@ -16,7 +17,8 @@ public class ImageController implements Serializable{
 	private static final long serialVersionUID = 6880768227268019348L;
 	
 	/**
-	 * ArrayList of pixelstreams.
+	 * ArrayList of pixelstreams. Guarded by this ImageController, 
+	 * as background jobs add to it while the render thread reads it.
 	 */
 	private ArrayList<PixelStream> pixelStreams;
 	
@@ -30,6 +32,19 @@ public class ImageController implements Serializable{
 	 */
 	private ImageRenderer renderer;
 	
+	/**
+	 * Whether changed layers are rebuilt in parallel.
+	 */
+	private static volatile boolean parallel = true;
+	
+	/**
+	 * Sets whether changed layers are rebuilt in parallel, or one at a time.
+	 * @param parallel True for parallel.
+	 */
+	public static void setParallel(boolean parallel){
+		ImageController.parallel = parallel;
+	}
+	
 	/**
 	 * Creates a new ImageController.
 	 */
@@ -48,7 +63,10 @@ public class ImageController implements Serializable{
 	public PixelStream addImage(String title, BufferedImage img){
 		
 		PixelStream pixelStream = new PixelStream(title, img);
-		pixelStreams.add(pixelStream);
+		
+		synchronized(this){
+			pixelStreams.add(pixelStream);
+		}
 		
 		return pixelStream;
 	}
@@ -57,13 +75,17 @@ public class ImageController implements Serializable{
 	 * Creates a PixelStream from converted raw data,
 	 * and returns it.
 	 * @param title The name of the file from which the raw data was loaded.
-	 * @param convertedRaw int array, loaded from any file.
+	 * @param convertedRaw PixelBuffer, loaded from any file.
 	 * @param alpha If converted image is to have alpha.
 	 * @return new PixelStream.
 	 */
-	public PixelStream addRaw(String title , int[] convertedRaw, boolean alpha) {		
+	public PixelStream addRaw(String title , PixelBuffer convertedRaw, boolean alpha) {		
 		PixelStream pixelStream = new PixelStream(title, convertedRaw, alpha);
-		pixelStreams.add(pixelStream);
+		
+		synchronized(this){
+			pixelStreams.add(pixelStream);
+		}
+		
 		return pixelStream;
 	}
 	
@@ -71,32 +93,49 @@ public class ImageController implements Serializable{
 	 * Removes a pixelstream from the list
 	 * @param stream The PixelStream
 	 */
-	public void removePixelStream(PixelStream stream){
+	public synchronized void removePixelStream(PixelStream stream){
 		pixelStreams.remove(stream);
 	}
 	
 	/**
 	 * Requests that an effect be applied to a desired pixel stream.
 	 * @param pixelStream The Pixelstream
-	 * @param effect Desired effect.
+	 * @param name Name of the desired effect, e.g. "sort".
 	 * @param modifiers Effect modifiers.
+	 * @param monitor Receives progress, and may cancel the effect.
+	 * @return False if the effect was cancelled, leaving the PixelStream unchanged.
 	 */
-	public void applyEffect(PixelStream pixelStream, Effect effect, int[] modifiers){
-		effectController.applyEffect(pixelStream, effect, modifiers);
+	public boolean applyEffect(PixelStream pixelStream, String name, int[] modifiers, EffectMonitor monitor){
+		return effectController.applyEffect(pixelStream, name, modifiers, monitor);
 	}
 	
 	/**
 	 * Checks if any pixelstream has changed, and needs to be rerendered. 
-	 * If need be, a pixelstream is reset, and its effects are reapplied.
+	 * If need be, a pixelstream is reset to its nearest checkpoint, and the 
+	 * remaining effects are reapplied. Layers are independent, so they are rebuilt 
+	 * in parallel on the common ForkJoinPool, which the layers' own parallel effects share. 
+	 * The rebuild thereby takes about as long as the slowest layer, rather than all of them.
 	 */
 	public void checkPixelStreams(){
-		for(PixelStream pixelStream : pixelStreams){
-			if(!pixelStream.isRendered()){
-				pixelStream.resetPixels();
-				effectController.applyEffects(pixelStream);
-				pixelStream.setRendered(true);
-			}
-		}
+		ArrayList<PixelStream> changed = new ArrayList<>();
+		
+		for(PixelStream pixelStream : snapshot())
+			if(!pixelStream.isRendered())
+				changed.add(pixelStream);
+		
+		if(parallel && changed.size() > 1)
+			changed.parallelStream().forEach(this::rebuild);
+		else
+			changed.forEach(this::rebuild);
+	}
+	
+	/**
+	 * Resets a pixelstream to its nearest checkpoint, and reapplies the remaining effects.
+	 * @param pixelStream PixelStream to rebuild.
+	 */
+	private void rebuild(PixelStream pixelStream){
+		effectController.applyEffects(pixelStream);
+		pixelStream.setRendered(true);
 	}
 	
 	/**
@@ -105,8 +144,12 @@ public class ImageController implements Serializable{
 	 * @return BufferedImage the rendered image
 	 */
 	public BufferedImage render(RenderProperties properties){
-		renderer.setRenderProperties(properties);
-		return renderer.renderImage(pixelStreams);
+		ArrayList<PixelStream> streams = snapshot();
+		
+		synchronized(renderer){
+			renderer.setRenderProperties(properties);
+			return renderer.renderImage(streams);
+		}
 	}
 	
 	/**
@@ -116,9 +159,29 @@ public class ImageController implements Serializable{
 	 * @return BufferedImage the rendered image
 	 */
 	public BufferedImage render(RenderProperties properties, String type){
-		renderer.setRenderProperties(properties);
-		return renderer.renderImageType(pixelStreams,determineImageType(type));
+		ArrayList<PixelStream> streams = snapshot();
+		
+		synchronized(renderer){
+			renderer.setRenderProperties(properties);
+			return renderer.renderImageType(streams,determineImageType(type));
+		}
+	}
+	
+	/**
+	 * Renders the image, based on given properties, and hands the merged pixels to a reader. 
+	 * No other render can start until the reader returns, so the pixels do not change while 
+	 * they are read, and need not be copied.
+	 * @param properties Properties.
+	 * @param reader Reads the merged pixels.
+	 * @return What the reader returns.
+	 */
+	public <T> T renderPixels(RenderProperties properties, Function<PixelBuffer, T> reader){
+		ArrayList<PixelStream> streams = snapshot();
 		
+		synchronized(renderer){
+			renderer.setRenderProperties(properties);
+			return reader.apply(renderer.renderPixels(streams));
+		}
 	}
 	
 	/**
@@ -127,26 +190,38 @@ public class ImageController implements Serializable{
 	 * @param streams ArrayList of PixelStreams to set.
 	 */
 	public void setPixelStreams(ArrayList<PixelStream> streams) {
-		pixelStreams = streams;
+		synchronized(this){
+			pixelStreams = streams;
+		}
+		
+		synchronized(renderer){
+			renderer.invalidate();
+		}
 	}
 	
 	/**
 	 * Returns ArrayList of pixelstreams.
 	 * @return ArrayList of pixelstreams.
 	 */
-	public ArrayList<PixelStream> getPixelStreams() {
+	public synchronized ArrayList<PixelStream> getPixelStreams() {
 		return pixelStreams;
 	}
+	
+	/**
+	 * Returns a copy of the list of pixelstreams, 
+	 * that can be iterated while other threads add or remove pixelstreams.
+	 * @return Copy of the ArrayList of pixelstreams.
+	 */
+	public synchronized ArrayList<PixelStream> snapshot() {
+		return new ArrayList<>(pixelStreams);
+	}
 
 	/**
 	 * Clears and resets the ImageController, including the loaded 
-	 * pixelstreams.
+	 * pixelstreams. The renderer is kept, as a render may still be in progress.
 	 */
-	public void clear(){
+	public synchronized void clear(){
 		pixelStreams.clear();
-		pixelStreams = null;
-		renderer = null;
-		effectController = null;
 	}
 	
 	/**
@@ -174,24 +249,26 @@ public class ImageController implements Serializable{
 	}
 	
 	/**
-	 * Creates and adds a PixelStream from an int[].
-	 * @param pixelStream PixelStream from which the int[] was copied.
+	 * Creates and adds a PixelStream from a PixelBuffer.
+	 * @param pixelStream PixelStream from which the PixelBuffer was copied.
 	 * @param copyRange The copied range.
 	 * @return The PixelStream.
 	 */
-	private PixelStream createPixelStreamFromCopy(PixelStream pixelStream, int[] copyRange){
-		String title = "Layer " + (pixelStreams.size()+1);
-		PixelStream copy = new PixelStream(title,copyRange,pixelStream.hasAlpha());
+	private PixelStream createPixelStreamFromCopy(PixelStream pixelStream, PixelBuffer copyRange){
+		PixelStream copy = new PixelStream("",copyRange,pixelStream.hasAlpha());
 		
 		copy.setPos(pixelStream.getSelectionS()+pixelStream.getPos());
 		
 		int width = pixelStream.getWidth();
-		int height = (copy.getPixels().length)/width;
+		int height = copy.getLength()/width;
 		
 		copy.setWidth(width);
 		copy.setHeight(height);
 		
-		pixelStreams.add(copy);
+		synchronized(this){
+			copy.setTitle("Layer " + (pixelStreams.size()+1));
+			pixelStreams.add(copy);
+		}
 		
 		return copy;
 	}
@@ -1,7 +1,11 @@
 package glitchy.core.imageProcessing;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This class handles image rendering. It can render in four different ways: 
@@ -18,39 +22,138 @@ public class ImageRenderer{
 		int mergePixels(int p1, int p2, boolean alpha);
 	}
 	
+	/**
+	 * Number of output pixels merged by each parallel task. 
+	 * 32768 pixels, i.e. 128kb, fits in a core's L2 cache.
+	 */
+	static final int CHUNK_SIZE = 1 << 15;
+	
+	/**
+	 * Whether to merge chunks of the output in parallel.
+	 */
+	private static volatile boolean parallel = true;
+	
+	/**
+	 * Sets whether to merge chunks of the output in parallel. 
+	 * Both modes produce identical images.
+	 * @param parallel Parallel render mode.
+	 */
+	public static void setParallel(boolean parallel){
+		ImageRenderer.parallel = parallel;
+	}
+	
+	/**
+	 * Whether to merge runs of pixels with MergeKernels, 
+	 * rather than one pixel at a time with a PixelMerger.
+	 */
+	private static volatile boolean kernels = true;
+	
+	/**
+	 * Sets whether to merge runs of pixels with MergeKernels. 
+	 * When off, pixels are merged one at a time by a PixelMerger. 
+	 * Both produce identical images.
+	 * @param kernels Use bulk merge kernels.
+	 */
+	public static void setKernels(boolean kernels){
+		ImageRenderer.kernels = kernels;
+	}
+	
+	/**
+	 * Per-thread buffer, that layer pixels are copied into before being merged by a kernel.
+	 */
+	private static final ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> new int[CHUNK_SIZE]);
+	
+	/**
+	 * Merges a set of chunks, by splitting them in half until only one is left.
+	 * @author Aksel
+	 */
+	private class MergeTask extends RecursiveAction{
+		private static final long serialVersionUID = 2848221612484370281L;
+		
+		private final ArrayList<PixelStream> pixelStreams;
+		private final PixelMerger merger;
+		
+		/**
+		 * Chunks, as {start, end}.
+		 */
+		private final ArrayList<int[]> chunks;
+		
+		/**
+		 * Range of chunks to merge, [from, to).
+		 */
+		private final int from, to;
+		
+		MergeTask(ArrayList<PixelStream> pixelStreams, PixelMerger merger, ArrayList<int[]> chunks, int from, int to){
+			this.pixelStreams = pixelStreams;
+			this.merger = merger;
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute(){
+			if(to - from == 1){
+				int[] chunk = chunks.get(from);
+				render(pixelStreams, merger, chunk[0], chunk[1]);
+				return;
+			}
+			
+			int mid = (from + to) >>> 1;
+			invokeAll(new MergeTask(pixelStreams, merger, chunks, from, mid),
+					new MergeTask(pixelStreams, merger, chunks, mid, to));
+		}
+	}
+	
 	/**
 	 * Properties, defining the image to be rendered, and how it is to be rendered.
 	 */
 	private RenderProperties properties;
 
 	/**
-	 * Rendered image.
+	 * Rendered image. Kept between renders, and only reallocated when its size changes.
 	 */
 	private BufferedImage img;
 	
 	/**
-	 * Creates a BufferedImage from RenderProperties and a PixelStream.
-	 * @param pixelStream A PixelStream with which the BufferedImage will be filled.
-	 * @return BufferedImage The image.
+	 * Merged pixels. This is the rendered image's own data buffer, 
+	 * such that pixels are merged straight into the image.
 	 */
-	private BufferedImage pixelStreamToImage(PixelStream pixelStream){
-		img.setRGB(0, 0, properties.w, properties.h, pixelStream.getPixels(), 0, properties.w);
-		return img;
+	private int[] output;
+	
+	/**
+	 * The pixelstreams, in the order they were in during the last render.
+	 */
+	private ArrayList<PixelStream> renderedStreams = new ArrayList<>();
+	
+	/**
+	 * Render type used during the last render.
+	 */
+	private int renderedType = -1;
+	
+	/**
+	 * Pixels, in canvas indices, that need to be merged again.
+	 */
+	private DirtyRegion dirty = new DirtyRegion();
+	
+	/**
+	 * Marks the whole image as changed, such that the next render merges every pixel.
+	 */
+	public void invalidate(){
+		dirty.markAll();
 	}
 
 	/**
-	 * Renders a BufferedImage of type ARGB.
+	 * Renders a BufferedImage of type ARGB. 
+	 * Only pixels that have changed since the last render are merged, 
+	 * straight into the image's raster. The same image is returned every time, 
+	 * until the RenderProperties change size.
 	 * @param pixelStreams the pixelstreams to be rendered
 	 * @return BufferedImage.
 	 */
 	public BufferedImage renderImage(ArrayList<PixelStream> pixelStreams){
-		if(img==null ||
-				(properties.w != img.getWidth() || 
-				properties.h != img.getHeight())
-				){
-			img = new BufferedImage(properties.w , properties.h , BufferedImage.TYPE_INT_ARGB);
-		}
-		return pixelStreamToImage(mergePixelStreams(pixelStreams));
+		mergePixelStreams(pixelStreams);
+		return img;
 	}
 
 	/**
@@ -60,18 +163,98 @@ public class ImageRenderer{
 	 * @return BufferedImage of specified type.
 	 */
 	public BufferedImage renderImageType(ArrayList<PixelStream> pixelStreams, int imageType){
-		img = new BufferedImage(properties.w , properties.h , imageType);
-		return pixelStreamToImage(mergePixelStreams(pixelStreams));
+		mergePixelStreams(pixelStreams);
+		
+		BufferedImage typed = new BufferedImage(properties.w , properties.h , imageType);
+		typed.setRGB(0, 0, properties.w, properties.h, output, 0, properties.w);
+		return typed;
 	}
 
 	/**
-	 * Renders pixelstream.
+	 * Renders the pixelstreams, and returns the merged pixels themselves, not a copy. 
+	 * They are only valid until the next render.
+	 * @param pixelStreams The pixelStreams to be rendered
+	 * @return Merged pixels.
+	 */
+	public PixelBuffer renderPixels(ArrayList<PixelStream> pixelStreams){
+		mergePixelStreams(pixelStreams);
+		return PixelBuffers.wrap(output);
+	}
+
+	/**
+	 * Merges the changed pixels of the pixelstreams into the output.
 	 * @param pixelStreams The pixelstreams to be rendered
-	 * @return PixelStream the merged pixelstream
 	 */
-	private PixelStream mergePixelStreams(ArrayList<PixelStream> pixelStreams) {
+	private void mergePixelStreams(ArrayList<PixelStream> pixelStreams) {
+		int length = properties.w * properties.h;
+		
+		if(img==null ||
+				(properties.w != img.getWidth() || 
+				properties.h != img.getHeight())
+				){
+			img = new BufferedImage(properties.w , properties.h , BufferedImage.TYPE_INT_ARGB);
+			output = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+			invalidate();
+		}
+		
+		if(properties.renderType != renderedType){
+			renderedType = properties.renderType;
+			invalidate();
+		}
+		
+		collectDirty(pixelStreams);
+		
+		ArrayList<int[]> spans = dirty.take(length);
+		
 		PixelMerger merger = constructPixelMerger();
-		return render(pixelStreams,merger);
+		
+		//Every output pixel only depends on the layers at its index, so chunks can be merged independently
+		ArrayList<int[]> chunks = new ArrayList<>();
+		for(int[] span : spans)
+			for(int start = span[0]; start < span[1]; start += CHUNK_SIZE)
+				chunks.add(new int[]{start, Math.min(span[1], start + CHUNK_SIZE)});
+		
+		if(parallel && chunks.size() > 1)
+			ForkJoinPool.commonPool().invoke(new MergeTask(pixelStreams, merger, chunks, 0, chunks.size()));
+		
+		else
+			for(int[] chunk : chunks)
+				render(pixelStreams, merger, chunk[0], chunk[1]);
+	}
+	
+	/**
+	 * Collects the changed pixels from every pixelstream. 
+	 * Pixelstreams that have been added or removed since the last render are changed in full.
+	 * @param pixelStreams The pixelstreams to be rendered
+	 */
+	private void collectDirty(ArrayList<PixelStream> pixelStreams){
+		if(!pixelStreams.equals(renderedStreams)){
+			ArrayList<PixelStream> kept = new ArrayList<>(renderedStreams);
+			kept.retainAll(pixelStreams);
+			
+			ArrayList<PixelStream> keptNow = new ArrayList<>(pixelStreams);
+			keptNow.retainAll(renderedStreams);
+			
+			//Layers changed order, which changes how every pixel is merged
+			if(!kept.equals(keptNow))
+				invalidate();
+			
+			for(PixelStream pS : renderedStreams)
+				if(!pixelStreams.contains(pS))
+					pS.markDirty(0, pS.getLength());
+			
+			for(PixelStream pS : pixelStreams)
+				if(!renderedStreams.contains(pS))
+					pS.markDirty(0, pS.getLength());
+		}
+		
+		for(PixelStream pS : renderedStreams)
+			dirty.addAll(pS.getDirtyRegion());
+		
+		for(PixelStream pS : pixelStreams)
+			dirty.addAll(pS.getDirtyRegion());
+		
+		renderedStreams = new ArrayList<>(pixelStreams);
 	}
 	
 	private PixelMerger constructPixelMerger(){
@@ -107,45 +290,59 @@ public class ImageRenderer{
 	}
 
 	/**
-	 * Merges all PixelStreams, with the bitwise XOR operator.
+	 * Merges all PixelStreams into the output, within the span [start, end).
 	 * @param pixelStreams the pixelstreams
 	 * @param merger Pixel merger.
-	 * @return PixelStream, created from merged PixelStreams
+	 * @param start Start index in the output, inclusive.
+	 * @param end End index in the output, exclusive.
 	 */
-	private PixelStream render(ArrayList<PixelStream> pixelStreams, PixelMerger merger){
+	private void render(ArrayList<PixelStream> pixelStreams, PixelMerger merger, int start, int end){
 
-		//Output PixelStream
-		PixelStream oP = new PixelStream(properties.w * properties.h);
+		//Output pixels
+		int[] oP = output;
+		
+		Arrays.fill(oP, start, end, 0);
 
 		//PixelStream's starting position. Offsets pixel index.
 		int pos;
 
-		int maxPos = oP.getPixels().length;
-
 		for(PixelStream pS : pixelStreams){
 			if (!pS.isVisible())
 				continue;
 
 			pos = pS.getPos();
 			
-			for(int index = 0; pS.hasIndex(index) && (index+pos < maxPos); index++){
-				if(index+pos<0)
-					continue;
+			//Read straight from the layer's buffer, whichever backend it uses.
+			PixelBuffer pixels = pS.getPixels();
+			boolean alpha = pS.hasAlpha();
+			
+			//Part of the span covered by this PixelStream
+			int from = (int) Math.max(start, (long) pos);
+			int to = (int) Math.min(end, (long) pos + pS.getLength());
+			
+			if(kernels){
+				int[] src = scratch.get();
 				
+				for(int oI = from; oI < to; oI += src.length){
+					int n = Math.min(src.length, to - oI);
+					pixels.get(oI - pos, src, 0, n);
+					MergeKernels.merge(properties.renderType, src, 0, oP, oI, n, alpha);
+				}
+				
+				continue;
+			}
+			
+			for(int oI = from; oI < to; oI++){
 				//Pixel at index in PixelStream
-				int p1 = pS.getPixel(index);
-
-				//Pixel at index in output PixelStream
-				int p2 = oP.getPixel(index+pos);
+				int p1 = pixels.get(oI - pos);
 
-				int result = merger.mergePixels(p1, p2, pS.hasAlpha());
+				//Pixel at index in output
+				int p2 = oP[oI];
 
-				//Merge pixels, and put into output PixelStream
-				oP.setPixel(index+pos, result);
+				//Merge pixels, and put into output
+				oP[oI] = merger.mergePixels(p1, p2, alpha);
 			}
 		}
-
-		return oP;
 	}
 	
 	/**
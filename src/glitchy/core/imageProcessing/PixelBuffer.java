@@ -0,0 +1,74 @@
+package glitchy.core.imageProcessing;
+
+import java.io.Serializable;
+
+/**
+ * Storage for a PixelStream's pixels. Pixels are packed ARGB integers,
+ * addressed by a long index, such that a buffer is not limited to the
+ * size of a Java array.
+ * @author Aksel
+ */
+public interface PixelBuffer extends Serializable{
+
+	/**
+	 * Returns the number of pixels in the buffer.
+	 * @return Number of pixels.
+	 */
+	long length();
+
+	/**
+	 * Returns pixel at specified index.
+	 * @param index Index.
+	 * @return Pixel at index.
+	 */
+	int get(long index);
+
+	/**
+	 * Sets pixel at index to given pixel.
+	 * @param index Index to set.
+	 * @param pixel Pixel to set.
+	 */
+	void set(long index, int pixel);
+
+	/**
+	 * Copies pixels, starting at index, into an int array.
+	 * @param index Index of first pixel to copy.
+	 * @param dst Destination array.
+	 * @param offset Offset in destination array.
+	 * @param length Number of pixels to copy.
+	 */
+	void get(long index, int[] dst, int offset, int length);
+
+	/**
+	 * Copies pixels from an int array into the buffer, starting at index.
+	 * @param index Index of first pixel to set.
+	 * @param src Source array.
+	 * @param offset Offset in source array.
+	 * @param length Number of pixels to copy.
+	 */
+	void put(long index, int[] src, int offset, int length);
+
+	/**
+	 * Sets every pixel in the range [from, to) to the given pixel.
+	 * @param from Start index, inclusive.
+	 * @param to End index, exclusive.
+	 * @param pixel Pixel to fill with.
+	 */
+	void fill(long from, long to, int pixel);
+
+	/**
+	 * Copies the range [from, to) into a new buffer.
+	 * @param from Start index, inclusive.
+	 * @param to End index, exclusive.
+	 * @return New buffer, containing the copied pixels.
+	 */
+	PixelBuffer copyOfRange(long from, long to);
+
+	/**
+	 * Copies the entire buffer.
+	 * @return New buffer, containing the same pixels.
+	 */
+	default PixelBuffer copy(){
+		return copyOfRange(0, length());
+	}
+}
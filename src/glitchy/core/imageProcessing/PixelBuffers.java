@@ -0,0 +1,149 @@
+package glitchy.core.imageProcessing;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Allocates PixelBuffers, and chooses the backend based on the number of pixels.
+ * Small buffers live on the heap, large buffers are stored off-heap.
+ * @author Aksel
+ */
+public final class PixelBuffers{
+
+	/**
+	 * Number of pixels copied per chunk, when copying between buffers.
+	 */
+	static final int CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * Buffers with at least this many pixels are allocated off-heap.
+	 * 16 megapixels by default.
+	 */
+	private static volatile long offHeapThreshold = 1 << 24;
+
+	private PixelBuffers(){
+	}
+
+	/**
+	 * Sets the number of pixels, from which buffers are allocated off-heap.
+	 * @param threshold Number of pixels. 0 puts every buffer off-heap.
+	 */
+	public static void setOffHeapThreshold(long threshold){
+		offHeapThreshold = threshold;
+	}
+
+	/**
+	 * Allocates an empty buffer with the desired number of pixels,
+	 * using the backend best suited for its size.
+	 * @param length Number of pixels.
+	 * @return Empty PixelBuffer.
+	 */
+	public static PixelBuffer allocate(long length){
+		if(length < offHeapThreshold && length <= Integer.MAX_VALUE - 8)
+			return new HeapPixelBuffer((int) length);
+
+		if(length <= DirectPixelBuffer.MAX_LENGTH)
+			return new DirectPixelBuffer((int) length);
+
+		return new SegmentedPixelBuffer(length);
+	}
+
+	/**
+	 * Allocates an empty buffer on the same backend as another buffer: on the heap 
+	 * if that buffer is, and off-heap otherwise. Used for parts of a buffer, which 
+	 * are small on their own, but together may be as large as the buffer.
+	 * @param buffer Buffer whose backend to use.
+	 * @param length Number of pixels.
+	 * @return Empty PixelBuffer.
+	 */
+	public static PixelBuffer allocateLike(PixelBuffer buffer, long length){
+		if(buffer instanceof HeapPixelBuffer && length <= Integer.MAX_VALUE - 8)
+			return new HeapPixelBuffer((int) length);
+
+		if(length <= DirectPixelBuffer.MAX_LENGTH)
+			return new DirectPixelBuffer((int) length);
+
+		return new SegmentedPixelBuffer(length);
+	}
+
+	/**
+	 * Wraps an int array. The array is not copied.
+	 * @param pixels Packed integers.
+	 * @return PixelBuffer backed by the array.
+	 */
+	public static PixelBuffer wrap(int[] pixels){
+		return new HeapPixelBuffer(pixels);
+	}
+
+	/**
+	 * Copies pixels from one buffer to another, in chunks.
+	 * @param src Source buffer.
+	 * @param srcIndex Index of first pixel to copy.
+	 * @param dst Destination buffer.
+	 * @param dstIndex Index in destination buffer.
+	 * @param length Number of pixels to copy.
+	 */
+	public static void copy(PixelBuffer src, long srcIndex, PixelBuffer dst, long dstIndex, long length){
+		if(src instanceof HeapPixelBuffer && length <= Integer.MAX_VALUE){
+			dst.put(dstIndex, ((HeapPixelBuffer) src).array(), (int) srcIndex, (int) length);
+			return;
+		}
+
+		if(dst instanceof HeapPixelBuffer && length <= Integer.MAX_VALUE){
+			src.get(srcIndex, ((HeapPixelBuffer) dst).array(), (int) dstIndex, (int) length);
+			return;
+		}
+
+		int[] chunk = new int[(int) Math.min(CHUNK_SIZE, length)];
+
+		for(long copied = 0; copied < length; copied += chunk.length){
+			int n = (int) Math.min(chunk.length, length - copied);
+			src.get(srcIndex + copied, chunk, 0, n);
+			dst.put(dstIndex + copied, chunk, 0, n);
+		}
+	}
+
+	/**
+	 * Writes a buffer's length and pixels to a stream, in chunks.
+	 * Used by buffers that cannot be serialized directly.
+	 * @param buffer Buffer to write.
+	 * @param out Stream.
+	 * @throws IOException
+	 */
+	public static void writePixels(PixelBuffer buffer, ObjectOutputStream out) throws IOException{
+		long length = buffer.length();
+		out.writeLong(length);
+
+		int[] chunk = new int[(int) Math.min(CHUNK_SIZE, length)];
+
+		for(long written = 0; written < length; written += chunk.length){
+			int n = (int) Math.min(chunk.length, length - written);
+			buffer.get(written, chunk, 0, n);
+
+			for(int i = 0; i < n; i++)
+				out.writeInt(chunk[i]);
+		}
+	}
+
+	/**
+	 * Reads pixels written by writePixels into a buffer, after the length
+	 * has been read.
+	 * @param buffer Buffer to fill.
+	 * @param length Number of pixels.
+	 * @param in Stream.
+	 * @throws IOException
+	 */
+	public static void readPixels(PixelBuffer buffer, long length, ObjectInputStream in) throws IOException{
+		int[] chunk = new int[(int) Math.min(CHUNK_SIZE, length)];
+
+		for(long read = 0; read < length; read += chunk.length){
+			int n = (int) Math.min(chunk.length, length - read);
+
+			for(int i = 0; i < n; i++)
+				chunk[i] = in.readInt();
+
+			buffer.put(read, chunk, 0, n);
+		}
+	}
+}
@@ -1,9 +1,14 @@
 package glitchy.core.imageProcessing;
 
 import glitchy.core.effects.AbstractEffect;
+import glitchy.core.effects.EffectCheckpoint;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -16,17 +21,69 @@ import java.util.Arrays;
 public class PixelStream implements Serializable{
 	private static final long serialVersionUID = 912596946632060796L;
 
-	private int[] originalPixels;
+	/**
+	 * Largest number of pixels in a PixelStream. Indices, selections and effect ranges 
+	 * are ints, so longer buffers cannot be used as layers.
+	 */
+	public static final long MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+	/**
+	 * Fields as saved in projects. Projects from before PixelBuffers saved the pixels 
+	 * as int arrays, under originalPixels and pixels. These are kept, such that those 
+	 * projects still load, and the buffers are saved under new names. See readObject.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("originalPixels", int[].class),
+		new ObjectStreamField("pixels", int[].class),
+		new ObjectStreamField("originalBuffer", PixelBuffer.class),
+		new ObjectStreamField("pixelBuffer", CopyOnWritePixelBuffer.class),
+		new ObjectStreamField("effects", ArrayList.class),
+		new ObjectStreamField("effectActions", ArrayList.class),
+		new ObjectStreamField("cuts", ArrayList.class),
+		new ObjectStreamField("w", int.class),
+		new ObjectStreamField("h", int.class),
+		new ObjectStreamField("hasAlpha", boolean.class),
+		new ObjectStreamField("pos", int.class),
+		new ObjectStreamField("selectionS", int.class),
+		new ObjectStreamField("selectionE", int.class),
+		new ObjectStreamField("title", String.class),
+		new ObjectStreamField("visible", boolean.class),
+		new ObjectStreamField("rendered", boolean.class),
+	};
+
+	/**
+	 * Pixels, as they were when the PixelStream was created.
+	 */
+	private PixelBuffer originalPixels;
 	
 	/**
-	 * Array of pixels.
+	 * Buffer of pixels, with effects applied. 
+	 * Shares its pages with originalPixels, until they are written to.
 	 */
-	private int[] pixels;
+	private CopyOnWritePixelBuffer pixels;
 	
 	private ArrayList<AbstractEffect> effects = new ArrayList<>();
 	
 	private ArrayList<Boolean[]> effectActions = new ArrayList<>();
 	
+	/**
+	 * Snapshots of the pixels, part way through the effects. 
+	 * Only a cache, and therefore not saved with projects.
+	 */
+	private transient ArrayList<EffectCheckpoint> checkpoints;
+	
+	/**
+	 * Ranges that have been cut out of this PixelStream, as 
+	 * {start, end, number of effects before the cut, number of undo actions including the cut}. 
+	 * Cuts are applied again, between the same effects, when the pixels are rebuilt.
+	 */
+	private ArrayList<int[]> cuts = new ArrayList<>();
+	
+	/**
+	 * Pixels that have changed since the last render, in canvas indices.
+	 */
+	private transient DirtyRegion dirty;
+	
 	/**
 	 * The source image's width.
 	 */
@@ -69,16 +126,6 @@ public class PixelStream implements Serializable{
 	
 	private boolean rendered = true;
 
-	/**
-	 * Constructs an empty PixelStream, with the desired number of pixels.
-	 * @param numOfPixels Desired number of pixels.
-	 */
-	public PixelStream(int numOfPixels){
-		pixels = new int[numOfPixels];
-		originalPixels = pixels.clone();
-		title = "render";
-	}
-	
 	/**
 	 * Constructs a PixelStream from a BufferedImage.
 	 * @param img
@@ -89,31 +136,40 @@ public class PixelStream implements Serializable{
 		w = img.getWidth();
 		h = img.getHeight();
 		
-		setPixels(img.getRGB(0, 0, w, h, null, 0, w));
-		originalPixels = pixels.clone();
+		PixelBuffer imgPixels = PixelBuffers.allocate((long) w * h);
+		
+		//Copy row by row, so no full-size int[] is needed for off-heap buffers
+		int[] row = new int[w];
+		for(int y = 0; y < h; y++){
+			img.getRGB(0, y, w, 1, row, 0, w);
+			imgPixels.put((long) y * w, row, 0, w);
+		}
+		
+		setPixels(imgPixels);
 		
 		hasAlpha = img.getColorModel().hasAlpha();
 		selectionS = 0;
-		selectionE = pixels.length-1;
+		selectionE = getLength()-1;
 	}
 	
 	/**
-	 * Constructs a PixelStream from an array of packed integers.
+	 * Constructs a PixelStream from a buffer of packed integers. 
+	 * The buffer is not copied, and should not be modified afterwards.
 	 * @param title Source filename.
 	 * @param pixels Packed integers.
 	 * @param alpha 
+	 * @throws IllegalArgumentException If the buffer has more than MAX_LENGTH pixels.
 	 */
-	public PixelStream(String title, int[] pixels, boolean alpha) {
+	public PixelStream(String title, PixelBuffer pixels, boolean alpha) {
 		this.title = title;
 		this.hasAlpha = alpha;
 		
-		w = h = (int) Math.sqrt(pixels.length);
-		
 		setPixels(pixels);
-		originalPixels = pixels.clone();
+		
+		w = h = (int) Math.sqrt(pixels.length());
 		
 		selectionS = 0;
-		selectionE = pixels.length-1;
+		selectionE = getLength()-1;
 	}
 	
 	/**
@@ -121,8 +177,20 @@ public class PixelStream implements Serializable{
 	 */
 	public void undo() {
 		Boolean[] undoList = effectActions.remove(effectActions.size() - 1);
-		if (effects.size() > undoList.length)
-			effects.remove(effects.size() - 1);
+		
+		//Cuts made by the undone action are dropped
+		for(int i = cuts.size() - 1; i >= 0 && cuts.get(i)[3] > effectActions.size(); i--){
+			int[] cut = cuts.remove(i);
+			markDirty(cut[0], cut[1]);
+		}
+		
+		if (effects.size() > undoList.length){
+			AbstractEffect removed = effects.remove(effects.size() - 1);
+			
+			//Removed effects are not reapplied, so they cannot report their own range
+			int[] range = removed.getRange();
+			markDirty(range[0], range[1]+1);
+		}
 		
 		int index = 0;
 		for (Boolean enabled : undoList) {
@@ -154,7 +222,15 @@ public class PixelStream implements Serializable{
 	 * @return True or false, whether or not the index is in bounds.
 	 */
 	public boolean hasIndex(int index){
-		return index >= 0 & index < pixels.length;
+		return index >= 0 & index < pixels.length();
+	}
+	
+	/**
+	 * Returns the number of pixels.
+	 * @return Number of pixels.
+	 */
+	public int getLength(){
+		return (int) pixels.length();
 	}
 	
 	/**
@@ -163,7 +239,7 @@ public class PixelStream implements Serializable{
 	 * @return Pixel at index.
 	 */
 	public int getPixel(int index){
-		return pixels[index];
+		return pixels.get(index);
 	}
 	
 	/**
@@ -172,7 +248,7 @@ public class PixelStream implements Serializable{
 	 * @return Color of pixel at specified index.
 	 */
 	public Color getPixelColor(int index){
-		return new Color(pixels[index],true);
+		return new Color(pixels.get(index),true);
 	}
 	
 	/**
@@ -181,21 +257,34 @@ public class PixelStream implements Serializable{
 	 * @param pixel Pixel to set.
 	 */
 	public void setPixel(int index , int pixel){
-		pixels[index] = pixel;
+		pixels.set(index, pixel);
 	}
 	
 	/**
-	 * @return Array of pixels (packed integers)
+	 * @return Buffer of pixels (packed integers)
 	 */
-	public int[] getPixels(){
+	public PixelBuffer getPixels(){
 		return pixels;
 	}
 
 	/**
-	 * @param pixels An array of packed integers, that can be interpreted as colors.
+	 * @return Buffer of the original pixels, before effects
 	 */
-	public void setPixels(int[] pixels){
-		this.pixels = pixels;
+	public PixelBuffer getOriginalPixels(){
+		return originalPixels;
+	}
+
+	/**
+	 * Sets the original pixels, and starts a new working copy of them. 
+	 * @param pixels A buffer of packed integers, that can be interpreted as colors.
+	 * @throws IllegalArgumentException If the buffer has more than MAX_LENGTH pixels.
+	 */
+	public void setPixels(PixelBuffer pixels){
+		if(pixels.length() > MAX_LENGTH)
+			throw new IllegalArgumentException("Too many pixels for a layer: " + pixels.length());
+		
+		this.originalPixels = pixels;
+		this.pixels = new CopyOnWritePixelBuffer(pixels);
 	}
 
 	/**
@@ -211,7 +300,13 @@ public class PixelStream implements Serializable{
 	 * @param pos Starting position.
 	 */
 	public void setPos(int pos) {
+		if(this.pos == pos)
+			return;
+		
+		//Both where the PixelStream was, and where it is now, have changed
+		markDirty(0, getLength());
 		this.pos = pos;
+		markDirty(0, getLength());
 	}
 	
 	/**
@@ -232,6 +327,9 @@ public class PixelStream implements Serializable{
 	 * @param bool
 	 */
 	public void setVisible(boolean bool) {
+		if(visible != bool)
+			markDirty(0, getLength());
+		
 		visible = bool;
 	}
 	
@@ -307,8 +405,8 @@ public class PixelStream implements Serializable{
 	 * @param selectionE Index.
 	 */
 	public void setSelectionE(int selectionE){
-		if (selectionE > pixels.length || selectionE < 0)
-			selectionE = pixels.length - 1;
+		if (selectionE > getLength() || selectionE < 0)
+			selectionE = getLength() - 1;
 		
 		this.selectionE = selectionE;
 	}
@@ -343,6 +441,17 @@ public class PixelStream implements Serializable{
 		return effects;
 	}
 	
+	/**
+	 * Returns the pixelstream's effect checkpoints, in effect order.
+	 * @return Checkpoints
+	 */
+	public ArrayList<EffectCheckpoint> getCheckpoints() {
+		if(checkpoints == null)
+			checkpoints = new ArrayList<>();
+		
+		return checkpoints;
+	}
+	
 	/**
 	 * Whether or not original image has alpha
 	 * @return Has alpha
@@ -363,18 +472,21 @@ public class PixelStream implements Serializable{
 	 * Copies the selection.
 	 * @return Copy
 	 */
-	public int[] copyRange(){
-		return Arrays.copyOfRange(pixels, selectionS, selectionE);
+	public PixelBuffer copyRange(){
+		return pixels.copyOfRange(selectionS, selectionE);
 	}
 	
 	/**
 	 * Cuts the selection.
 	 * @return Copy
 	 */
-	public int[] cutRange(){
-		int[] copyRange = Arrays.copyOfRange(pixels, selectionS, selectionE);
+	public PixelBuffer cutRange(){
+		PixelBuffer copyRange = pixels.copyOfRange(selectionS, selectionE);
+		
+		pixels.fill(selectionS, selectionE, 0);
 		
-		Arrays.fill(pixels, selectionS, selectionE, 0);
+		cuts.add(new int[]{selectionS, selectionE, effects.size(), effectActions.size()});
+		markDirty(selectionS, selectionE);
 		
 		return copyRange;
 	}
@@ -388,10 +500,145 @@ public class PixelStream implements Serializable{
 		return effectStrings;
 	}
 	
+	/**
+	 * Resets the pixels to the original pixels, without cuts. 
+	 * Only the pages that effects have written to are dropped.
+	 */
 	public void resetPixels(){
-		pixels = originalPixels.clone();
+		pixels.reset();
+		
+		for(int[] cut : cuts)
+			markDirty(cut[0], cut[1]);
+		
 		setRendered(false);
 	}
+	
+	/**
+	 * Applies the cuts that were made after the effects before fromEffect, 
+	 * and before the effect at toEffect, in the order they were made.
+	 * @param fromEffect Index of first effect, inclusive.
+	 * @param toEffect Index of last effect, exclusive.
+	 */
+	public void applyCuts(int fromEffect, int toEffect){
+		for(int[] cut : cuts)
+			if(cut[2] >= fromEffect && cut[2] < toEffect)
+				pixels.fill(cut[0], cut[1], 0);
+	}
+	
+	/**
+	 * Whether a cut was made right before the effect at the given index.
+	 * @param effectIndex Effect index.
+	 * @return True if there is a cut.
+	 */
+	public boolean hasCut(int effectIndex){
+		for(int[] cut : cuts)
+			if(cut[2] == effectIndex)
+				return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Marks a range of this PixelStream's pixels as changed, 
+	 * such that they are rendered again.
+	 * @param start Start index, inclusive.
+	 * @param end End index, exclusive.
+	 */
+	public void markDirty(int start, int end){
+		getDirtyRegion().add((long) pos + start, (long) pos + end);
+	}
+	
+	/**
+	 * Returns the pixels that have changed since the last render, 
+	 * in canvas indices, i.e. offset by the starting position.
+	 * @return Dirty region.
+	 */
+	public synchronized DirtyRegion getDirtyRegion(){
+		if(dirty == null)
+			dirty = new DirtyRegion();
+		
+		return dirty;
+	}
+
+	/**
+	 * Saves the PixelStream, with its buffers under originalBuffer and pixelBuffer.
+	 * @param out Stream.
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		ObjectOutputStream.PutField fields = out.putFields();
+		
+		fields.put("originalBuffer", originalPixels);
+		fields.put("pixelBuffer", pixels);
+		fields.put("effects", effects);
+		fields.put("effectActions", effectActions);
+		fields.put("cuts", cuts);
+		fields.put("w", w);
+		fields.put("h", h);
+		fields.put("hasAlpha", hasAlpha);
+		fields.put("pos", pos);
+		fields.put("selectionS", selectionS);
+		fields.put("selectionE", selectionE);
+		fields.put("title", title);
+		fields.put("visible", visible);
+		fields.put("rendered", rendered);
+		
+		out.writeFields();
+	}
+	
+	/**
+	 * Loads a PixelStream. Pixels saved as int arrays, by older versions, are wrapped 
+	 * in PixelBuffers, and pixels that effects had changed are copied into the working buffer.
+	 * @param in Stream.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		ObjectInputStream.GetField fields = in.readFields();
+		
+		if(!fields.defaulted("originalBuffer")){
+			originalPixels = (PixelBuffer) fields.get("originalBuffer", null);
+			pixels = (CopyOnWritePixelBuffer) fields.get("pixelBuffer", null);
+		}
+		
+		else{
+			int[] oldOriginal = (int[]) fields.get("originalPixels", null);
+			int[] oldPixels = (int[]) fields.get("pixels", null);
+			
+			if(oldOriginal == null)
+				throw new IOException("PixelStream has no pixels");
+			
+			setPixels(PixelBuffers.wrap(oldOriginal));
+			
+			if(oldPixels != null && !Arrays.equals(oldOriginal, oldPixels))
+				pixels.put(0, oldPixels, 0, Math.min(oldPixels.length, oldOriginal.length));
+		}
+		
+		effects = (ArrayList<AbstractEffect>) fields.get("effects", null);
+		effectActions = (ArrayList<Boolean[]>) fields.get("effectActions", null);
+		cuts = (ArrayList<int[]>) fields.get("cuts", null);
+		w = fields.get("w", 0);
+		h = fields.get("h", 0);
+		hasAlpha = fields.get("hasAlpha", true);
+		pos = fields.get("pos", 0);
+		selectionS = fields.get("selectionS", 0);
+		selectionE = fields.get("selectionE", 0);
+		title = (String) fields.get("title", null);
+		visible = fields.get("visible", true);
+		rendered = fields.get("rendered", true);
+		
+		//Older projects have no cuts, and a missing list would fail on the next reset
+		if(effects == null)
+			effects = new ArrayList<>();
+		if(effectActions == null)
+			effectActions = new ArrayList<>();
+		if(cuts == null)
+			cuts = new ArrayList<>();
+		
+		//Cuts saved without their place among the effects cannot be applied again
+		cuts.removeIf(cut -> cut.length < 4);
+	}
 
 	public boolean isRendered() {
 		return rendered;
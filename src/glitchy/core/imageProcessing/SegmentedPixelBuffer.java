@@ -0,0 +1,114 @@
+package glitchy.core.imageProcessing;
+
+/**
+ * Long-indexed PixelBuffer, made up of fixed-size off-heap segments. 
+ * Used for layers too large for a single array or direct buffer.
+ * @author Aksel
+ */
+public class SegmentedPixelBuffer implements PixelBuffer{
+	private static final long serialVersionUID = -6135436526004517923L;
+
+	/**
+	 * Segment size, as a power of two. 2^26 pixels, i.e. 256mb per segment.
+	 */
+	static final int SEGMENT_SHIFT = 26;
+
+	/**
+	 * Number of pixels per segment.
+	 */
+	static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+	/**
+	 * Masks out the index within a segment.
+	 */
+	static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	/**
+	 * The segments. All but the last segment are full.
+	 */
+	private final DirectPixelBuffer[] segments;
+
+	/**
+	 * Total number of pixels.
+	 */
+	private final long length;
+
+	/**
+	 * Constructs an empty buffer, with the desired number of pixels.
+	 * @param length Number of pixels.
+	 */
+	public SegmentedPixelBuffer(long length){
+		if(length < 0)
+			throw new IllegalArgumentException("Illegal buffer length: " + length);
+
+		this.length = length;
+
+		int segmentCount = (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+		segments = new DirectPixelBuffer[segmentCount];
+
+		for(int s = 0; s < segmentCount; s++){
+			long remaining = length - ((long) s << SEGMENT_SHIFT);
+			segments[s] = new DirectPixelBuffer((int) Math.min(SEGMENT_SIZE, remaining));
+		}
+	}
+
+	@Override
+	public long length(){
+		return length;
+	}
+
+	@Override
+	public int get(long index){
+		return segments[(int) (index >>> SEGMENT_SHIFT)].get(index & SEGMENT_MASK);
+	}
+
+	@Override
+	public void set(long index, int pixel){
+		segments[(int) (index >>> SEGMENT_SHIFT)].set(index & SEGMENT_MASK, pixel);
+	}
+
+	@Override
+	public void get(long index, int[] dst, int offset, int length){
+		while(length > 0){
+			DirectPixelBuffer segment = segments[(int) (index >>> SEGMENT_SHIFT)];
+			long segmentIndex = index & SEGMENT_MASK;
+
+			//Copy up to the end of the current segment
+			int n = (int) Math.min(length, segment.length() - segmentIndex);
+			segment.get(segmentIndex, dst, offset, n);
+
+			index += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	@Override
+	public void put(long index, int[] src, int offset, int length){
+		while(length > 0){
+			DirectPixelBuffer segment = segments[(int) (index >>> SEGMENT_SHIFT)];
+			long segmentIndex = index & SEGMENT_MASK;
+
+			//Copy up to the end of the current segment
+			int n = (int) Math.min(length, segment.length() - segmentIndex);
+			segment.put(segmentIndex, src, offset, n);
+
+			index += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	@Override
+	public void fill(long from, long to, int pixel){
+		for(long i = from; i < to; i++)
+			set(i, pixel);
+	}
+
+	@Override
+	public PixelBuffer copyOfRange(long from, long to){
+		PixelBuffer copy = PixelBuffers.allocate(to - from);
+		PixelBuffers.copy(this, from, copy, 0, to - from);
+		return copy;
+	}
+}
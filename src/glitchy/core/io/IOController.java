@@ -1,6 +1,7 @@
 package glitchy.core.io;
 
 import glitchy.core.Project;
+import glitchy.core.imageProcessing.PixelBuffer;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -10,6 +11,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 
 import javax.imageio.ImageIO;
 
@@ -51,16 +54,71 @@ public class IOController{
 	}
 	
 	/**
-	 * Passes a FileInputStream to a new RAWDataConverter. The file 
-	 * is converted to an int[], which is then returned.
+	 * Passes a file to a new RAWDataConverter, which maps the file 
+	 * and converts all of it to a PixelBuffer in memory, in parallel. 
+	 * Unlike openRaw, the pixels do not depend on the file afterwards.
 	 * @param path Path to file.
-	 * @param alpha Whether image is to have alpha channel.
-	 * @return File, converted to int[]
+	 * @param format Layout of the pixels in the file.
+	 * @return File, converted to a PixelBuffer. Null if it could not be read.
 	 */
-	public int[] readRaw(String path, boolean alpha) {
-		FileInputStream fis = createFileInputStream(path);
-
-		return new RAWDataConverter().readRaw(fis,alpha);
+	public PixelBuffer readRaw(String path, RawFormat format) {
+		try {
+			return new RAWDataConverter().readRaw(Paths.get(path), format);
+		} catch (IOException | InvalidPathException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Opens a raw file as a read-only PixelBuffer, without reading it. 
+	 * Pixels are decoded from the mapped file when they are accessed.
+	 * @param path Path to file.
+	 * @param format Layout of the pixels in the file.
+	 * @return PixelBuffer over the file. Null if it could not be opened.
+	 */
+	public PixelBuffer openRaw(String path, RawFormat format) {
+		try {
+			return new MappedRawPixelBuffer(Paths.get(path), format);
+		} catch (IOException | InvalidPathException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Passes pixels to a new RAWDataConverter, which writes them to a file.
+	 * @param pixels Pixels to export.
+	 * @param path Path to file.
+	 * @param format Layout of the pixels in the file.
+	 * @return True if the file was written.
+	 */
+	public boolean exportRaw(PixelBuffer pixels, String path, RawFormat format) {
+		try {
+			new RAWDataConverter().writeRaw(pixels, Paths.get(path), format);
+			return true;
+		} catch (IOException | InvalidPathException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Whether pixels are read from the given file, i.e. whether they are a raw file 
+	 * that is still mapped. Such a file must not be written to.
+	 * @param pixels Pixels.
+	 * @param path Path to file.
+	 * @return True if the pixels are read from the file.
+	 */
+	public boolean readsFrom(PixelBuffer pixels, String path) {
+		if(!(pixels instanceof MappedRawPixelBuffer))
+			return false;
+		
+		try {
+			return ((MappedRawPixelBuffer) pixels).readsFrom(Paths.get(path));
+		} catch (InvalidPathException e) {
+			return false;
+		}
 	}
 	
 	/**
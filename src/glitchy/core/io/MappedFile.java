@@ -0,0 +1,162 @@
+package glitchy.core.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A read-only slice of a file, memory mapped in windows of WINDOW_SIZE bytes.
+ * Windows are mapped the first time they are read, so parts of the slice
+ * that are never read are never mapped, and bytes outside it are never touched. 
+ * Positions are relative to the start of the slice. Reads may be concurrent.
+ * @author Aksel
+ */
+class MappedFile {
+
+	/**
+	 * Number of bytes per window. 1gb, well within the 2gb a single mapping can hold.
+	 */
+	static final int WINDOW_SIZE = 1 << 30;
+
+	private final Path path;
+
+	/**
+	 * Position of the slice in the file.
+	 */
+	private final long start;
+
+	/**
+	 * Slice size, in bytes.
+	 */
+	private final long size;
+
+	/**
+	 * Mapped windows. Null until first read.
+	 */
+	private final AtomicReferenceArray<MappedByteBuffer> windows;
+
+	/**
+	 * Opens a slice of a file, as given by a RawFormat's offset and length. Nothing is mapped yet.
+	 * @param path Path to file.
+	 * @param format Format, whose slice to open.
+	 * @throws IOException If the file's size cannot be read.
+	 */
+	MappedFile(Path path, RawFormat format) throws IOException {
+		this.path = path;
+
+		start = format.getOffset();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			size = format.getSliceSize(channel.size());
+		}
+
+		windows = new AtomicReferenceArray<>((int) ((size + WINDOW_SIZE - 1) / WINDOW_SIZE));
+	}
+
+	/**
+	 * Returns the path to the file.
+	 * @return Path.
+	 */
+	Path getPath(){
+		return path;
+	}
+
+	/**
+	 * Returns the slice size.
+	 * @return Size, in bytes.
+	 */
+	long size(){
+		return size;
+	}
+
+	/**
+	 * Reads one byte from the file, without moving any buffer's position.
+	 * @param position Position of the byte in the slice.
+	 * @return Unsigned byte.
+	 */
+	int readByte(long position){
+		return window((int) (position / WINDOW_SIZE)).get((int) (position % WINDOW_SIZE)) & 0xff;
+	}
+
+	/**
+	 * Copies bytes from the file into an array.
+	 * @param position Position of the first byte in the slice.
+	 * @param dst Destination.
+	 * @param offset Offset in destination.
+	 * @param length Number of bytes.
+	 */
+	void read(long position, byte[] dst, int offset, int length){
+		while(length > 0){
+			int inWindow = (int) (position % WINDOW_SIZE);
+			ByteBuffer window = window((int) (position / WINDOW_SIZE)).duplicate();
+
+			//Copy up to the end of the current window
+			int n = Math.min(length, window.capacity() - inWindow);
+
+			window.position(inWindow);
+			window.get(dst, offset, n);
+
+			position += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * Copies big-endian ints from the file into an array, if they are all within one window.
+	 * @param position Position of the first int's first byte in the slice.
+	 * @param dst Destination.
+	 * @param offset Offset in destination.
+	 * @param length Number of ints.
+	 * @return False if the ints cross into the next window, in which case nothing is copied.
+	 */
+	boolean readInts(long position, int[] dst, int offset, int length){
+		int inWindow = (int) (position % WINDOW_SIZE);
+		ByteBuffer window = window((int) (position / WINDOW_SIZE)).duplicate();
+
+		if(inWindow + 4L * length > window.capacity())
+			return false;
+
+		window.position(inWindow);
+		window.order(ByteOrder.BIG_ENDIAN).asIntBuffer().get(dst, offset, length);
+		return true;
+	}
+
+	/**
+	 * Returns a window, mapping it first if it has not been read yet.
+	 * A mapping stays valid after its channel is closed.
+	 * @param windowIndex Window index.
+	 * @return Mapped window.
+	 */
+	private MappedByteBuffer window(int windowIndex){
+		MappedByteBuffer window = windows.get(windowIndex);
+
+		if(window != null)
+			return window;
+
+		synchronized(this){
+			//Another thread may have mapped the window in the meantime
+			window = windows.get(windowIndex);
+			if(window != null)
+				return window;
+
+			long windowStart = (long) windowIndex * WINDOW_SIZE;
+
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				window = channel.map(MapMode.READ_ONLY, start + windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			windows.set(windowIndex, window);
+			return window;
+		}
+	}
+}
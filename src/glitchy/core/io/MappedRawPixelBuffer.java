@@ -0,0 +1,154 @@
+package glitchy.core.io;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import glitchy.core.imageProcessing.PixelBuffer;
+import glitchy.core.imageProcessing.PixelBuffers;
+
+/**
+ * Read-only PixelBuffer over a raw file, in any RawFormat. Nothing is read when it is 
+ * created: windows of the file are memory mapped on first access, and pixels are decoded 
+ * from them each time they are read. The file's pages are cached by the operating 
+ * system, rather than on the heap, so several large files can be layers at once. 
+ * Used as a PixelStream's original pixels, where the CopyOnWritePixelBuffer 
+ * on top of it only copies the pages that effects write to.
+ * The file must not change while the buffer is in use.
+ * Projects store the decoded pixels, rather than the path, so they do not depend on the file.
+ * @author Aksel
+ */
+public class MappedRawPixelBuffer implements PixelBuffer{
+	private static final long serialVersionUID = -2017963473541307425L;
+
+	/**
+	 * The format's slice of the raw file.
+	 */
+	private final transient MappedFile file;
+
+	/**
+	 * Layout of the pixels in the file.
+	 */
+	private final transient RawFormat format;
+
+	/**
+	 * Number of whole pixels in the file.
+	 */
+	private final transient long length;
+
+	/**
+	 * Creates a buffer over a raw file. The file is not read yet.
+	 * @param path Path to file.
+	 * @param format Layout of the pixels in the file.
+	 * @throws IOException If the file's size cannot be read.
+	 */
+	public MappedRawPixelBuffer(Path path, RawFormat format) throws IOException{
+		this.format = format;
+
+		file = new MappedFile(path, format);
+		length = format.getPixelCountInSlice(file.size());
+	}
+
+	/**
+	 * Whether this buffer reads from the given file.
+	 * @param path Path to a file.
+	 * @return True if it is the same file, false if not, or if it does not exist.
+	 */
+	public boolean readsFrom(Path path){
+		try {
+			return Files.isSameFile(file.getPath(), path);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public long length(){
+		return length;
+	}
+
+	@Override
+	public int get(long index){
+		return RAWDataConverter.convert(file, format, length, index);
+	}
+
+	@Override
+	public void get(long index, int[] dst, int offset, int length){
+		while(length > 0){
+			//Convert a chunk at a time, to bound the bytes held at once
+			int n = Math.min(length, RAWDataConverter.CHUNK_SIZE);
+
+			RAWDataConverter.convert(file, format, this.length, index, dst, offset, n);
+
+			index += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	@Override
+	public void set(long index, int pixel){
+		throw new UnsupportedOperationException("Raw file buffers are read-only");
+	}
+
+	@Override
+	public void put(long index, int[] src, int offset, int length){
+		throw new UnsupportedOperationException("Raw file buffers are read-only");
+	}
+
+	@Override
+	public void fill(long from, long to, int pixel){
+		throw new UnsupportedOperationException("Raw file buffers are read-only");
+	}
+
+	@Override
+	public PixelBuffer copyOfRange(long from, long to){
+		PixelBuffer copy = PixelBuffers.allocate(to - from);
+		PixelBuffers.copy(this, from, copy, 0, to - from);
+		return copy;
+	}
+
+	/**
+	 * Saves the decoded pixels in place of this buffer.
+	 * @return Serialized form.
+	 */
+	private Object writeReplace(){
+		return new Decoded(this);
+	}
+
+	/**
+	 * Serialized form of a MappedRawPixelBuffer: its decoded pixels, 
+	 * which are read back into a buffer from PixelBuffers.allocate.
+	 */
+	private static class Decoded implements Serializable{
+		private static final long serialVersionUID = 6301125383327386740L;
+
+		/**
+		 * Pixels being written. Replaced by the read pixels, when read.
+		 */
+		private transient PixelBuffer pixels;
+
+		Decoded(PixelBuffer pixels){
+			this.pixels = pixels;
+		}
+
+		private void writeObject(ObjectOutputStream out) throws IOException{
+			out.defaultWriteObject();
+			PixelBuffers.writePixels(pixels, out);
+		}
+
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+			in.defaultReadObject();
+			long length = in.readLong();
+			pixels = PixelBuffers.allocate(length);
+			PixelBuffers.readPixels(pixels, length, in);
+		}
+
+		private Object readResolve(){
+			return pixels;
+		}
+	}
+}
@@ -1,83 +1,578 @@
 package glitchy.core.io;
 
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+import glitchy.core.imageProcessing.PixelBuffer;
+import glitchy.core.imageProcessing.PixelBuffers;
+import glitchy.core.io.RawFormat.Layout;
 
 /**
- * This class is used for raw data conversion from bytes to integers.
+ * This class is used for raw data conversion from bytes to integers, and back.
+ * Files are memory mapped, and converted in independent chunks, on every core. 
+ * Their size is only limited by the PixelBuffer they are converted to. 
+ * Pixels are written back through a FileChannel, a block at a time, from direct buffers.
  * @author Mikkel and Aksel
  *
  */
 public class RAWDataConverter {
 
-	interface ByteConverter{
-		int bytesToPixel(int byteIndex, byte[] buffer);
-	}
+	/**
+	 * Number of pixels converted at once.
+	 */
+	static final int CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * Number of pixels per parallel task. Each task converts its pixels a chunk at a time.
+	 */
+	static final int TASK_SIZE = 1 << 22;
 
-	//100mb
-	final int maxLength = 104857600;
+	/**
+	 * Interleaved pixels further apart than this many bytes are read one at a time, 
+	 * rather than reading the gaps between them too.
+	 */
+	static final int GATHER_STRIDE = 64;
 
 	/**
-	 * This method takes a FileInputStream, reads its bytes, 
-	 * and merges them into packed integers.
-	 * @param fis FileInputStream.
-	 * @return int[] of Bytes merged into a pixel.
+	 * This method maps a file, and merges its bytes into packed integers, 
+	 * as described by the format. Chunks of pixels are converted in parallel. 
+	 * Bytes left over after the last whole pixel are ignored.
+	 * @param path Path to file.
+	 * @param format Layout of the pixels in the file.
+	 * @return PixelBuffer of bytes merged into pixels.
+	 * @throws IOException If the file cannot be mapped.
 	 */
-	public int[] readRaw(FileInputStream fis, boolean alpha) {
+	public PixelBuffer readRaw(Path path, RawFormat format) throws IOException {
+		MappedFile file = new MappedFile(path, format);
+
+		long length = format.getPixelCountInSlice(file.size());
+
+		PixelBuffer pixels = PixelBuffers.allocate(length);
+
+		int tasks = (int) ((length + TASK_SIZE - 1) / TASK_SIZE);
 
 		try {
-			//number of channels per pixel
-			int channelNumber;
+			IntStream.range(0, tasks).parallel().forEach(t -> {
+				long start = (long) t * TASK_SIZE;
+				long end = Math.min(length, start + TASK_SIZE);
+
+				int[] chunk = new int[(int) Math.min(CHUNK_SIZE, end - start)];
+
+				for(long first = start; first < end; first += chunk.length){
+					int n = (int) Math.min(chunk.length, end - first);
+
+					convert(file, format, length, first, chunk, 0, n);
+					pixels.put(first, chunk, 0, n);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
 
-			ByteConverter converter;
-			int bufferSize;
+		return pixels;
+	}
 
-			if(alpha){
-				converter = (byteIndex, buffer) -> mergeBytes(
-                        buffer[byteIndex++],
-                        buffer[byteIndex++],
-                        buffer[byteIndex++],
-                        buffer[byteIndex]);
+	/**
+	 * Writes pixels to a file, as described by the format. At offset 0, the file is replaced: 
+	 * it is written next to the old one, and moved over it, such that a failed export 
+	 * leaves the old file as it was. Otherwise, pixels are written into the file 
+	 * from the offset on, leaving the bytes before it alone. The gaps between interleaved 
+	 * records keep the file's bytes, or are zero past its end. The format's length is ignored.
+	 * @param pixels Pixels to write.
+	 * @param path Path to file.
+	 * @param format Layout of the pixels in the file.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void writeRaw(PixelBuffer pixels, Path path, RawFormat format) throws IOException {
+		if(format.getOffset() > 0){
+			writeRaw(pixels, path, format, StandardOpenOption.CREATE);
+			return;
+		}
+
+		Path absolute = path.toAbsolutePath();
+		Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+
+		try {
+			writeRaw(pixels, temp, format, StandardOpenOption.TRUNCATE_EXISTING);
+			Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Writes pixels to a file. Chunks of pixels are encoded and written in parallel, 
+	 * each through its own direct buffer, at their own position in the file.
+	 * @param pixels Pixels to write.
+	 * @param path Path to file.
+	 * @param format Layout of the pixels in the file.
+	 * @param option Whether to create or truncate the file.
+	 * @throws IOException If the file cannot be written.
+	 */
+	private void writeRaw(PixelBuffer pixels, Path path, RawFormat format, StandardOpenOption option) throws IOException {
+		long length = pixels.length();
+		int tasks = (int) ((length + TASK_SIZE - 1) / TASK_SIZE);
+
+		try (FileChannel channel = FileChannel.open(path, option, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			IntStream.range(0, tasks).parallel().forEach(t -> {
+				long start = (long) t * TASK_SIZE;
+				long end = Math.min(length, start + TASK_SIZE);
+
+				int[] chunk = new int[(int) Math.min(CHUNK_SIZE, end - start)];
+				ByteBuffer block = ByteBuffer.allocateDirect(blockSize(format, chunk.length));
+
+				try {
+					for(long first = start; first < end; first += chunk.length){
+						int n = (int) Math.min(chunk.length, end - first);
+
+						pixels.get(first, chunk, 0, n);
+						write(channel, format, length, first, chunk, n, block);
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes needed to encode a chunk of pixels at once.
+	 * @param format Format.
+	 * @param n Number of pixels.
+	 * @return Block size, in bytes.
+	 */
+	private static int blockSize(RawFormat format, int n){
+		int bytesPerPixel = format.getLayout().getBytesPerPixel();
 
-				channelNumber = 4;
-				bufferSize = 1024;
+		//One spare byte, for packed RGB written as ints
+		if(format.isPlanar() || format.getStride() > GATHER_STRIDE)
+			return n * bytesPerPixel + 1;
+
+		return (n - 1) * format.getStride() + bytesPerPixel + 1;
+	}
+
+	/**
+	 * Encodes and writes a run of pixels. Planar pixels are written as one run per plane, 
+	 * and records far apart are written one at a time. Records with small gaps between them 
+	 * are written as one run, after reading the gaps from the file.
+	 * @param channel File, open for reading and writing.
+	 * @param format Layout of the pixels in the file.
+	 * @param count Number of pixels being written in total.
+	 * @param first Index of first pixel.
+	 * @param pixels Pixels.
+	 * @param n Number of pixels.
+	 * @param block Direct buffer of at least blockSize bytes.
+	 * @throws IOException If the file cannot be written.
+	 */
+	private static void write(FileChannel channel, RawFormat format, long count, long first, int[] pixels, int n, ByteBuffer block) throws IOException {
+		Layout layout = format.getLayout();
+		int bytesPerPixel = layout.getBytesPerPixel();
+		int stride = format.getStride();
+		long offset = format.getOffset();
+
+		if(format.isPlanar()){
+			int planeBytes = n * layout.sampleBytes;
+
+			for(int s = 0; s < layout.samples(); s++){
+				block.clear();
+				encode(layout, format.isLittleEndian(), pixels, n, s, block, layout.sampleBytes);
+				writeFully(channel, block, planeBytes, offset + (s * count + first) * layout.sampleBytes);
 			}
+		}
+
+		else if(stride > GATHER_STRIDE){
+			block.clear();
+			encode(layout, format.isLittleEndian(), pixels, n, -1, block, bytesPerPixel);
+
+			for(int i = 0; i < n; i++){
+				block.limit((i + 1) * bytesPerPixel);
+				block.position(i * bytesPerPixel);
+
+				long position = offset + (first + i) * stride;
+				while(block.hasRemaining())
+					position += channel.write(block, position);
+			}
+		}
+
+		else{
+			int size = (n - 1) * stride + bytesPerPixel;
+			long position = offset + first * stride;
+
+			block.clear();
+
+			//Keep the bytes between records, or zeros past the end of the file
+			if(stride > bytesPerPixel){
+				block.limit(size);
+				while(block.hasRemaining() && channel.read(block, position + block.position()) > 0);
+				while(block.hasRemaining())
+					block.put((byte) 0);
+				block.clear();
+			}
+
+			encode(layout, format.isLittleEndian(), pixels, n, -1, block, stride);
+			writeFully(channel, block, size, position);
+		}
+	}
+
+	/**
+	 * Writes the start of a buffer to the file.
+	 * @param channel File.
+	 * @param block Buffer.
+	 * @param size Number of bytes to write.
+	 * @param position Position in the file.
+	 * @throws IOException If the file cannot be written.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer block, int size, long position) throws IOException {
+		block.limit(size);
+		block.position(0);
+
+		while(block.hasRemaining())
+			position += channel.write(block, position);
+	}
 
-			else{
-				converter = (byteIndex, buffer) -> mergeBytes(
-                        (byte) 0xff,
-                        buffer[byteIndex++],
-                        buffer[byteIndex++],
-                        buffer[byteIndex]);
+	/**
+	 * Encodes pixels into bytes, the inverse of decode. 8-bit channels are written 
+	 * to both bytes of 16-bit samples, gray is the luminance of red, green and blue, 
+	 * and RGB565 keeps the high bits of each channel.
+	 * Tightly packed 8-bit ARGB is copied as whole ints.
+	 * @param layout Channel layout.
+	 * @param littleEndian Whether 16-bit samples are little-endian.
+	 * @param pixels Pixels.
+	 * @param n Number of pixels.
+	 * @param sample Index of the only sample to encode, for planar pixels, or -1 for every sample.
+	 * @param block Destination, from position 0.
+	 * @param pixelStep Bytes from one pixel to the next, in the destination.
+	 */
+	private static void encode(Layout layout, boolean littleEndian, int[] pixels, int n, int sample, ByteBuffer block, int pixelStep){
+
+		//Tightly packed 8-bit ARGB is written as whole ints
+		if(layout == Layout.ARGB8 && sample == -1 && pixelStep == 4){
+			block.asIntBuffer().put(pixels, 0, n);
+			return;
+		}
 
-				channelNumber = 3;
-				bufferSize = 1215;
+		//Tightly packed 8-bit RGB is written an int at a time, each overwriting the spare byte of the one before
+		if((layout == Layout.RGB8 || layout == Layout.BGR8) && sample == -1 && pixelStep == 3){
+			boolean rgb = layout == Layout.RGB8;
+
+			for(int i = 0, j = 0; i < n; i++, j += 3)
+				block.putInt(j, rgb ? pixels[i] << 8 : Integer.reverseBytes(pixels[i]));
+			return;
+		}
+
+		if(layout == Layout.RGB565){
+			int msb = littleEndian ? 1 : 0;
+
+			for(int i = 0, j = 0; i < n; i++, j += pixelStep){
+				int p = pixels[i];
+				int v = ((p >>> 8) & 0xf800) | ((p >>> 5) & 0x07e0) | ((p >>> 3) & 0x001f);
+
+				block.put(j + msb, (byte) (v >>> 8));
+				block.put(j + 1 - msb, (byte) v);
 			}
+			return;
+		}
+
+		int sampleBytes = layout.sampleBytes;
+		String channels = layout.channels;
 
-			int length = fis.available();
-			if(length > maxLength)
-				length = maxLength;
+		//One sample at a time, for every pixel
+		int firstSample = sample < 0 ? 0 : sample;
+		int lastSample = sample < 0 ? channels.length() - 1 : sample;
 
-			int[] container = new int[length/channelNumber];
-			byte[] buffer   = new byte[bufferSize];
+		for(int s = firstSample; s <= lastSample; s++){
+			int k = (s - firstSample) * sampleBytes;
 
-			int pixelIndex = 0;
-			while(fis.read(buffer) != -1){
-				for(int byteIndex  = 0;
-						byteIndex  < bufferSize &&
-						pixelIndex < container.length;
-						byteIndex += channelNumber){
-					container[pixelIndex++] = converter.bytesToPixel(byteIndex,buffer);
+			if(channels.charAt(s) == 'Y'){
+				for(int i = 0, j = k; i < n; i++, j += pixelStep){
+					byte v = (byte) luminance(pixels[i]);
+
+					for(int b = 0; b < sampleBytes; b++)
+						block.put(j + b, v);
 				}
+				continue;
 			}
 
-			fis.close();
+			int shift = shift(channels.charAt(s));
 
-			return container;
+			for(int i = 0, j = k; i < n; i++, j += pixelStep){
+				byte v = (byte) (pixels[i] >>> shift);
 
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
+				for(int b = 0; b < sampleBytes; b++)
+					block.put(j + b, v);
+			}
+		}
+	}
+
+	/**
+	 * Returns the luminance of a pixel.
+	 * @param pixel Pixel.
+	 * @return 8-bit gray value.
+	 */
+	private static int luminance(int pixel){
+		int r = (pixel >>> 16) & 0xff;
+		int g = (pixel >>> 8) & 0xff;
+		int b = pixel & 0xff;
+
+		//Weights sum to 65536, so gray pixels keep their value
+		return (19595 * r + 38470 * g + 7471 * b + 32768) >>> 16;
+	}
+
+	/**
+	 * Converts a run of pixels. Only the bytes of those pixels are read: 
+	 * their part of each plane, if planar, and each record on its own, if records are far apart.
+	 * @param file The format's slice of the file.
+	 * @param format Layout of the pixels in the file.
+	 * @param count Number of pixels in the slice.
+	 * @param first Index of first pixel.
+	 * @param pixels Destination.
+	 * @param offset Offset in destination.
+	 * @param n Number of pixels.
+	 */
+	static void convert(MappedFile file, RawFormat format, long count, long first, int[] pixels, int offset, int n){
+		if(n == 0)
+			return;
+
+		Layout layout = format.getLayout();
+		int bytesPerPixel = layout.getBytesPerPixel();
+		int stride = format.getStride();
+
+		//Tightly packed 8-bit ARGB and RGB are read as whole ints
+		if(!format.isPlanar() && stride == bytesPerPixel){
+			if(layout == Layout.ARGB8 && file.readInts(first * 4, pixels, offset, n))
+				return;
+
+			if(layout == Layout.RGB8 && convertRGB(file, first * 3, pixels, offset, n))
+				return;
+		}
+
+		byte[] bytes;
+
+		//Distance between a pixel's bytes and the next pixel's, and between its samples
+		int pixelStep, sampleStep;
+
+		if(format.isPlanar()){
+			bytes = new byte[n * bytesPerPixel];
+			int planeBytes = n * layout.sampleBytes;
+
+			for(int s = 0; s < layout.samples(); s++)
+				file.read((s * count + first) * layout.sampleBytes, bytes, s * planeBytes, planeBytes);
+
+			pixelStep = layout.sampleBytes;
+			sampleStep = planeBytes;
+		}
+
+		else if(stride > GATHER_STRIDE){
+			bytes = new byte[n * bytesPerPixel];
+
+			for(int i = 0; i < n; i++)
+				file.read((first + i) * stride, bytes, i * bytesPerPixel, bytesPerPixel);
+
+			pixelStep = bytesPerPixel;
+			sampleStep = layout.sampleBytes;
+		}
+
+		else{
+			bytes = new byte[(n - 1) * stride + bytesPerPixel];
+			file.read(first * stride, bytes, 0, bytes.length);
+
+			pixelStep = stride;
+			sampleStep = layout.sampleBytes;
+		}
+
+		decode(layout, format.isLittleEndian(), bytes, pixelStep, sampleStep, pixels, offset, n);
+	}
+
+	/**
+	 * Converts a single pixel, reading each of its bytes straight from the file, 
+	 * without allocating.
+	 * @param file The format's slice of the file.
+	 * @param format Layout of the pixels in the file.
+	 * @param count Number of pixels in the slice.
+	 * @param index Index of the pixel.
+	 * @return Pixel.
+	 */
+	static int convert(MappedFile file, RawFormat format, long count, long index){
+		Layout layout = format.getLayout();
+		
+		//Position of the most significant byte within a sample
+		int msb = layout.sampleBytes == 2 && format.isLittleEndian() ? 1 : 0;
+		
+		//Position of the pixel's first sample, and distance between its samples
+		long position, sampleStep;
+		
+		if(format.isPlanar()){
+			position = index * layout.sampleBytes;
+			sampleStep = count * layout.sampleBytes;
+		}
+		
+		else{
+			position = index * format.getStride();
+			sampleStep = layout.sampleBytes;
+		}
+		
+		if(layout == Layout.RGB565)
+			return expandRGB565((file.readByte(position + msb) << 8) | file.readByte(position + 1 - msb));
+		
+		String channels = layout.channels;
+		
+		if(channels.length() == 1)
+			return 0xff000000 | (file.readByte(position + msb) * 0x010101);
+		
+		int pixel = layout.hasAlpha() ? 0 : 0xff000000;
+		
+		for(int s = 0; s < channels.length(); s++)
+			pixel |= file.readByte(position + s * sampleStep + msb) << shift(channels.charAt(s));
+		
+		return pixel;
+	}
+
+	/**
+	 * Converts tightly packed 8-bit RGB. Every 4 pixels are read as 3 whole ints, 
+	 * which are split into pixels with shifts, rather than byte by byte.
+	 * @param file Slice of the file.
+	 * @param position Position of the first pixel in the slice.
+	 * @param pixels Destination.
+	 * @param offset Offset in destination.
+	 * @param n Number of pixels.
+	 * @return False if the pixels cross into the file's next window, in which case nothing is converted.
+	 */
+	private static boolean convertRGB(MappedFile file, long position, int[] pixels, int offset, int n){
+		int groups = n / 4;
+
+		//The ints are read into the end of the destination, and unpacked from the front. 
+		//Unpacking never overtakes the ints that are yet to be read.
+		int w = offset + n - groups * 3;
+
+		if(!file.readInts(position, pixels, w, groups * 3))
+			return false;
+
+		for(int g = 0, p = offset; g < groups; g++, w += 3, p += 4){
+			int w0 = pixels[w];
+			int w1 = pixels[w + 1];
+			int w2 = pixels[w + 2];
+
+			pixels[p]     = 0xff000000 | (w0 >>> 8);
+			pixels[p + 1] = 0xff000000 | ((w0 & 0xff) << 16)   | (w1 >>> 16);
+			pixels[p + 2] = 0xff000000 | ((w1 & 0xffff) << 8)  | (w2 >>> 24);
+			pixels[p + 3] = 0xff000000 | (w2 & 0xffffff);
+		}
+
+		//Last few pixels, which do not fill an int
+		int rest = n - groups * 4;
+		byte[] bytes = new byte[rest * 3];
+		file.read(position + groups * 12L, bytes, 0, bytes.length);
+
+		for(int i = 0; i < rest; i++)
+			pixels[offset + groups * 4 + i] = mergeBytes((byte) 0xff, bytes[i * 3], bytes[i * 3 + 1], bytes[i * 3 + 2]);
+
+		return true;
+	}
+
+	/**
+	 * Merges bytes into pixels. 16-bit samples are reduced to their most significant byte, 
+	 * and gray is copied into red, green and blue. Pixels without alpha are made opaque.
+	 * @param layout Channel layout.
+	 * @param littleEndian Whether 16-bit samples are little-endian.
+	 * @param bytes Bytes.
+	 * @param pixelStep Bytes from one pixel's first sample to the next pixel's.
+	 * @param sampleStep Bytes from one sample of a pixel to the next.
+	 * @param pixels Destination.
+	 * @param offset Offset in destination.
+	 * @param n Number of pixels.
+	 */
+	private static void decode(Layout layout, boolean littleEndian, byte[] bytes, int pixelStep, int sampleStep, int[] pixels, int offset, int n){
+		//Position of the most significant byte within a sample
+		int msb = layout.sampleBytes == 2 && littleEndian ? 1 : 0;
+
+		if(layout == Layout.RGB565){
+			int lsb = 1 - msb;
+
+			for(int i = 0, j = 0; i < n; i++, j += pixelStep){
+				int v = (Byte.toUnsignedInt(bytes[j + msb]) << 8) | Byte.toUnsignedInt(bytes[j + lsb]);
+
+				pixels[offset + i] = expandRGB565(v);
+			}
+			return;
+		}
+
+		String channels = layout.channels;
+
+		switch(channels.length()){
+
+		case 1:
+			for(int i = 0, j = msb; i < n; i++, j += pixelStep)
+				pixels[offset + i] = 0xff000000 | (Byte.toUnsignedInt(bytes[j]) * 0x010101);
+			break;
+
+		case 3:{
+			int s0 = shift(channels.charAt(0));
+			int s1 = shift(channels.charAt(1));
+			int s2 = shift(channels.charAt(2));
+
+			for(int i = 0, j = msb; i < n; i++, j += pixelStep){
+				pixels[offset + i] = 0xff000000 
+						| (Byte.toUnsignedInt(bytes[j]) << s0) 
+						| (Byte.toUnsignedInt(bytes[j + sampleStep]) << s1) 
+						| (Byte.toUnsignedInt(bytes[j + 2 * sampleStep]) << s2);
+			}
+			break;
+		}
+
+		default:{
+			int s0 = shift(channels.charAt(0));
+			int s1 = shift(channels.charAt(1));
+			int s2 = shift(channels.charAt(2));
+			int s3 = shift(channels.charAt(3));
+
+			for(int i = 0, j = msb; i < n; i++, j += pixelStep){
+				pixels[offset + i] = (Byte.toUnsignedInt(bytes[j]) << s0) 
+						| (Byte.toUnsignedInt(bytes[j + sampleStep]) << s1) 
+						| (Byte.toUnsignedInt(bytes[j + 2 * sampleStep]) << s2) 
+						| (Byte.toUnsignedInt(bytes[j + 3 * sampleStep]) << s3);
+			}
+		}
+		}
+	}
+
+	/**
+	 * Expands an RGB565 sample to an opaque pixel, 
+	 * repeating the high bits of each channel in its low bits.
+	 * @param v RGB565 sample.
+	 * @return Pixel.
+	 */
+	private static int expandRGB565(int v){
+		int r = v >>> 11;
+		int g = (v >>> 5) & 0x3f;
+		int b = v & 0x1f;
+
+		return 0xff000000 | (((r << 3) | (r >>> 2)) << 16) | (((g << 2) | (g >>> 4)) << 8) | ((b << 3) | (b >>> 2));
+	}
+
+	/**
+	 * Returns the position of a channel in a packed integer.
+	 * @param channel A, R, G or B.
+	 * @return Shift, in bits.
+	 */
+	private static int shift(char channel){
+		switch(channel){
+		case 'A':
+			return 24;
+		case 'R':
+			return 16;
+		case 'G':
+			return 8;
+		default:
+			return 0;
 		}
 	}
 
@@ -95,4 +590,4 @@ public class RAWDataConverter {
 				(Byte.toUnsignedInt(g) <<  8) |
 				(Byte.toUnsignedInt(b));
 	}
-}
\ No newline at end of file
+}
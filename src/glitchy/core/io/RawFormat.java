@@ -0,0 +1,229 @@
+package glitchy.core.io;
+
+/**
+ * Describes how pixels are laid out in a raw file, and which slice of the file holds them.
+ * Pixels are either interleaved, one record per pixel, or planar, one plane per channel.
+ * Interleaved records start every stride bytes, which may leave gaps between them.
+ * 16-bit samples are reduced to their most significant byte.
+ * @author Aksel
+ */
+public class RawFormat {
+
+	/**
+	 * Channel layouts of a pixel.
+	 */
+	public enum Layout {
+		ARGB8("ARGB, 8-bit", "ARGB", 1),
+		RGB8("RGB, 8-bit", "RGB", 1),
+		BGR8("BGR, 8-bit", "BGR", 1),
+		RGB565("RGB565, 16-bit", "RGB", 2),
+		ARGB16("ARGB, 16-bit", "ARGB", 2),
+		RGB16("RGB, 16-bit", "RGB", 2),
+		GRAY8("Grayscale, 8-bit", "Y", 1),
+		GRAY16("Grayscale, 16-bit", "Y", 2);
+
+		/**
+		 * Name shown to the user.
+		 */
+		private final String name;
+
+		/**
+		 * Channels, in the order they are stored. Y is gray.
+		 */
+		final String channels;
+
+		/**
+		 * Bytes per sample. RGB565 packs all three channels into one sample.
+		 */
+		final int sampleBytes;
+
+		Layout(String name, String channels, int sampleBytes){
+			this.name = name;
+			this.channels = channels;
+			this.sampleBytes = sampleBytes;
+		}
+
+		/**
+		 * Whether the layout has an alpha channel.
+		 * @return True if it has alpha.
+		 */
+		public boolean hasAlpha(){
+			return channels.indexOf('A') >= 0;
+		}
+
+		/**
+		 * Number of samples per pixel.
+		 * @return Samples per pixel.
+		 */
+		int samples(){
+			return this == RGB565 ? 1 : channels.length();
+		}
+
+		/**
+		 * Number of bytes per sample, i.e. 2 for 16-bit layouts.
+		 * @return Bytes per sample.
+		 */
+		public int getSampleBytes(){
+			return sampleBytes;
+		}
+
+		/**
+		 * Number of bytes per pixel.
+		 * @return Bytes per pixel.
+		 */
+		public int getBytesPerPixel(){
+			return samples() * sampleBytes;
+		}
+
+		@Override
+		public String toString(){
+			return name;
+		}
+	}
+
+	/**
+	 * 8-bit ARGB, interleaved, from the start of the file.
+	 */
+	public static final RawFormat ARGB = new RawFormat(Layout.ARGB8, false, false, 0, 0, 0);
+
+	/**
+	 * 8-bit RGB, interleaved, from the start of the file.
+	 */
+	public static final RawFormat RGB = new RawFormat(Layout.RGB8, false, false, 0, 0, 0);
+
+	private final Layout layout;
+
+	/**
+	 * Whether each channel is stored in its own plane.
+	 */
+	private final boolean planar;
+
+	/**
+	 * Whether 16-bit samples are little-endian.
+	 */
+	private final boolean littleEndian;
+
+	/**
+	 * Bytes skipped at the start of the file.
+	 */
+	private final long offset;
+
+	/**
+	 * Bytes read after the offset, or 0 for the rest of the file.
+	 */
+	private final long length;
+
+	/**
+	 * Bytes from the start of one interleaved record to the next.
+	 */
+	private final int stride;
+
+	/**
+	 * Creates a format.
+	 * @param layout Channel layout.
+	 * @param planar Whether each channel is stored in its own plane, one after the other.
+	 * @param littleEndian Whether 16-bit samples are little-endian.
+	 * @param offset Bytes skipped at the start of the file.
+	 * @param length Bytes read after the offset, or 0 for the rest of the file.
+	 * @param stride Bytes from the start of one pixel to the next, or 0 for tightly packed pixels.
+	 * Ignored for planar pixels.
+	 * @throws IllegalArgumentException If the offset, length or stride are invalid, or RGB565 is planar.
+	 */
+	public RawFormat(Layout layout, boolean planar, boolean littleEndian, long offset, long length, int stride){
+		if(offset < 0)
+			throw new IllegalArgumentException("Illegal offset: " + offset);
+
+		if(length < 0)
+			throw new IllegalArgumentException("Illegal length: " + length);
+
+		if(planar && layout == Layout.RGB565)
+			throw new IllegalArgumentException("RGB565 cannot be planar");
+
+		if(stride == 0 || planar)
+			stride = layout.getBytesPerPixel();
+
+		if(stride < layout.getBytesPerPixel())
+			throw new IllegalArgumentException("Stride " + stride + " is shorter than a pixel");
+
+		this.layout = layout;
+		this.planar = planar;
+		this.littleEndian = littleEndian;
+		this.offset = offset;
+		this.length = length;
+		this.stride = stride;
+	}
+
+	public Layout getLayout(){
+		return layout;
+	}
+
+	public boolean isPlanar(){
+		return planar;
+	}
+
+	public boolean isLittleEndian(){
+		return littleEndian;
+	}
+
+	public long getOffset(){
+		return offset;
+	}
+
+	public long getLength(){
+		return length;
+	}
+
+	public int getStride(){
+		return stride;
+	}
+
+	/**
+	 * Whether pixels in this format have alpha.
+	 * @return True if they have alpha.
+	 */
+	public boolean hasAlpha(){
+		return layout.hasAlpha();
+	}
+
+	/**
+	 * Returns the number of bytes in the slice, in a file of the given size.
+	 * The slice is cut short by the end of the file.
+	 * @param fileSize File size, in bytes.
+	 * @return Slice size, in bytes.
+	 */
+	public long getSliceSize(long fileSize){
+		long available = Math.max(0, fileSize - offset);
+
+		if(length > 0)
+			return Math.min(available, length);
+
+		return available;
+	}
+
+	/**
+	 * Returns the number of whole pixels in a file of the given size.
+	 * @param fileSize File size, in bytes.
+	 * @return Number of pixels.
+	 */
+	public long getPixelCount(long fileSize){
+		return getPixelCountInSlice(getSliceSize(fileSize));
+	}
+
+	/**
+	 * Returns the number of whole pixels in a slice of the given size.
+	 * @param available Slice size, in bytes.
+	 * @return Number of pixels.
+	 */
+	long getPixelCountInSlice(long available){
+		int bytesPerPixel = layout.getBytesPerPixel();
+
+		if(planar)
+			return available / bytesPerPixel;
+
+		//The last record does not need room for the gap after it
+		if(available < bytesPerPixel)
+			return 0;
+
+		return (available - bytesPerPixel) / stride + 1;
+	}
+}
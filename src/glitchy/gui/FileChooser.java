@@ -83,6 +83,7 @@ public class FileChooser {
 			addImageFiltersExport(chooser);
 			chooser.setAcceptAllFileFilterUsed(false);		
 		case "importraw":
+		case "exportraw":
 			chooser.setAcceptAllFileFilterUsed(true);
 			break;
 		}
@@ -3,9 +3,9 @@ package glitchy.gui;
 import glitchy.core.Action;
 import glitchy.core.Config;
 import glitchy.core.CoreController;
-import glitchy.core.effects.Effect;
 import glitchy.core.imageProcessing.PixelStream;
 import glitchy.core.imageProcessing.RenderProperties;
+import glitchy.core.io.RawFormat;
 import glitchy.gui.popup.PopupController;
 
 import java.awt.Toolkit;
@@ -140,10 +140,11 @@ public class GuiController {
 	/**
 	 * Tells the corecontroller to load a raw from the given path
 	 * @param path
-	 * @param alpha
+	 * @param format
+	 * @param inMemory Whether to load the pixels into memory, rather than reading them from the file
 	 */
-	public void importRaw(String path,boolean alpha) {
-		coreController.loadRaw(path, alpha);
+	public void importRaw(String path,RawFormat format,boolean inMemory) {
+		coreController.loadRaw(path, format, inMemory);
 	}
 
 	/**
@@ -153,6 +154,36 @@ public class GuiController {
 		popupController.requestImportRawPopup(fileChooser, config.getParamaters().get("lastpathraw"));
 	}
 
+	/**
+	 * Tells the corecontroller to export the selected layer, or the rendered image, as a raw
+	 * @param path
+	 * @param format
+	 * @param composite Whether to export the rendered image, rather than the selected layer
+	 */
+	public void exportRaw(String path, RawFormat format, boolean composite) {
+		PixelStream selected = null;
+
+		if(!composite){
+			selected = window.getSelectedLayer();
+
+			if(selected == null){
+				errorMessage("No layer selected.");
+				return;
+			}
+		}
+
+		coreController.saveRaw(path, format, selected);
+		config.saveParameter("lastpathexportraw", path);
+		config.saveConfig();
+	}
+
+	/**
+	 * Requests an export raw popup from the popupcontroller
+	 */
+	public void requestExportRawPopup() {
+		popupController.requestExportRawPopup(fileChooser, config.getParamaters().get("lastpathexportraw"));
+	}
+
 	/**
 	 * Imports an image
 	 * Pops up a filechooser and loads the image with the given path (if not cancelled)
@@ -382,10 +413,10 @@ public class GuiController {
 	/**
 	 * Requests an effect to be made in the corecontroller
 	 * @param pixelStream
-	 * @param effect
+	 * @param effect Name of the effect
 	 * @param modifiers
 	 */
-	public void requestEffect(PixelStream pixelStream, Effect effect, int[] modifiers) {
+	public void requestEffect(PixelStream pixelStream, String effect, int[] modifiers) {
 		coreController.requestEffect(window.getSelectedLayer(), effect, modifiers);
 	}
 
@@ -450,6 +481,23 @@ public class GuiController {
 	public void startLoading(String message){
 		SwingUtilities.invokeLater(() -> window.startLoading(message));
 	}
+	
+	/**
+	 * Tells the window to show a loadingbar, with progress and a cancel button
+	 * @param message
+	 * @param cancel Called when the user cancels.
+	 */
+	public void startLoading(String message, Runnable cancel){
+		SwingUtilities.invokeLater(() -> window.startLoading(message, cancel));
+	}
+	
+	/**
+	 * Tells the window to update the loadingbar's progress
+	 * @param progress Progress, from 0 to 1.
+	 */
+	public void setProgress(double progress){
+		SwingUtilities.invokeLater(() -> window.setProgress(progress));
+	}
 
 	/**
 	 * Tells the window to hide the loadingbar
@@ -35,6 +35,8 @@ public class HelpContent {
 			return this.getReorderDescription();
 		case "import raw":
 			return this.getImportRawDescription();
+		case "export raw":
+			return this.getExportRawDescription();
 		default: 
 			return "";
 		}
@@ -47,7 +49,24 @@ public class HelpContent {
 	public String getImportRawDescription(){
 		return "<b>Import Raw:</b><br>"
 			 + "Choose any file to import, and Glitchy will convert it to an image.<br>"
-			 + "Large files will be capped at 100mb.";
+			 + "Format decides how bytes become pixels. 16-bit formats keep the high byte of each channel.<br>"
+			 + "Planar files store each channel after the other, rather than pixel by pixel.<br>"
+			 + "Offset and length import a slice of the file, and only that slice is read.<br>"
+			 + "Stride sets the bytes from one pixel to the next.<br>"
+			 + "Layers read pixels from the file as they are needed, so the file must not change.<br>"
+			 + "Load into memory converts the whole slice at once, on every core, and the file is free to change.";
+	}
+	
+	/**
+	 * This method gets help for export raw
+	 * @return String descriptive text
+	 */
+	public String getExportRawDescription(){
+		return "<b>Export Raw:</b><br>"
+			 + "Writes the selected layer, or the rendered image, as raw bytes, in any format that can be imported.<br>"
+			 + "16-bit formats repeat each channel in both bytes. Grayscale formats keep the brightness.<br>"
+			 + "With an offset of 0 the file is replaced. Otherwise, the pixels are written into the file<br>"
+			 + "from the offset on, and the bytes before them, and between them, are kept.";
 	}
 	
 	/**
@@ -111,7 +130,9 @@ public class HelpContent {
 		return "This effect allows you to shift the pixels by the specified number of bits.<br>"
 			 + "For example, shifting by 1 bit moves all bits one position to the right.<br>"
 			 + "This will also cause a color channel's <b>least significant bit</b> to<br>"
-			 + "become the <b>most significant bit</b> in the proceeding color channel.";
+			 + "become the <b>most significant bit</b> in the proceeding color channel.<br>"
+			 + "Bitstream shifts the whole selection as one stream of bits, by any number of bits.<br>"
+			 + "Bit-planes moves each bit of the channels that many pixels further than the bit below it.";
 	}
 	
 	/**
@@ -147,7 +168,8 @@ public class HelpContent {
 		return "This effect smears pixels to the right. Basically, each pixel affects the<br>"
 			 + "color of its proceeding pixels, with decreasing intensity, determined by<br>"
 			 + "the specified length.<br>"
-			 + "The intensity determines how much a pixel affects its proceeding pixels.";
+			 + "The intensity determines how much a pixel affects its proceeding pixels.<br>"
+			 + "The classic smear is exact, but slow for long lengths.";
 	}
 	
 	/**
@@ -156,6 +178,7 @@ public class HelpContent {
 	 */
 	private String getSortDescription() {
 		return "Sorts from lowest value to highest value.<br>"
-			 + "You can choose to sort by pixel values, or to sort channels independent of pixels";
+			 + "You can choose to sort by pixel values, or to sort channels independent of pixels.<br>"
+			 + "Pixels can also be sorted by luminance, hue or saturation, within the intervals where it is between the thresholds";
 	}
 }
@@ -1,5 +1,6 @@
 package glitchy.gui;
 
+import glitchy.core.imageProcessing.PixelBuffer;
 import glitchy.core.imageProcessing.PixelStream;
 import glitchy.gui.popup.HelpPopup;
 
@@ -285,7 +286,8 @@ public class Layers extends JPanel{
 	
 	/**
 	 * This method creates a thumbnail for the layer
-	 * Creates a new scaled bufferedImage with the pixels from PixelStream
+	 * Samples the pixels from PixelStream straight into a scaled bufferedImage, 
+	 * so large layers are never copied in full
 	 * @param scaledWidth
 	 * @param scaledHeight
 	 * @param imageWidth
@@ -297,12 +299,22 @@ public class Layers extends JPanel{
 			int scaledHeight,
 			int imageWidth,
 			int imageHeight,
-			int[] pixels){
+			PixelBuffer pixels){
 		
-		BufferedImage img = new BufferedImage(imageWidth,imageHeight,BufferedImage.TYPE_INT_ARGB);
-		img.setRGB(0, 0, imageWidth, imageHeight, pixels, 0, imageWidth);
+		BufferedImage img = new BufferedImage(scaledWidth,scaledHeight,BufferedImage.TYPE_INT_ARGB);
 		
-		return img.getScaledInstance(scaledWidth, scaledHeight, BufferedImage.SCALE_FAST);
+		for(int y = 0; y < scaledHeight; y++){
+			long row = (long) y * imageHeight / scaledHeight * imageWidth;
+			
+			for(int x = 0; x < scaledWidth; x++){
+				long index = row + (long) x * imageWidth / scaledWidth;
+				
+				if(index < pixels.length())
+					img.setRGB(x, y, pixels.get(index));
+			}
+		}
+		
+		return img;
 	}
 	
 	/**
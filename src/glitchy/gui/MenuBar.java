@@ -9,6 +9,9 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.KeyStroke;
 
+import glitchy.core.effects.EffectController;
+import glitchy.core.effects.EffectProvider;
+
 /**
  * Handles the gui and events of the items
  * @author Rasmus and Mikkel
@@ -23,10 +26,8 @@ public class MenuBar extends JMenuBar{
 	/**
 	 * These array contains all the different menu items. With these names the methods below, and the listener, switches between actions. 
 	 */
-	private String[] fileItems = {"New Project", "Open Project", "Save Project", "Import RAW", "Import Image", "Export Image", "Exit"};
+	private String[] fileItems = {"New Project", "Open Project", "Save Project", "Import RAW", "Import Image", "Export Image", "Export RAW", "Exit"};
 	//"Save as"
-	private String[] effectsItems = {"Bitshift","Invert","Smear","Sort","Shuffle","Reorder"};
-	//"Echo", "Phaser", "High/Low Pass"
 	private String[] helpItems = {"About Glitchy"};
 	//"Help content"
 	private String[] editItems = {"Undo","Duplicate selection into new layer","Extract selection into new layer", "Zoom In", "Zoom Out", "Reset Zoom"};
@@ -83,7 +84,7 @@ public class MenuBar extends JMenuBar{
 	private void addItems() {
 		
 		genericItemAdd(fileItems, file);
-		genericItemAdd(effectsItems, effects);
+		effectItemAdd(effects);
 		genericItemAdd(helpItems, help);
 		genericItemAdd(editItems, edit);
 		genericItemAdd(windowItems, window);
@@ -106,6 +107,22 @@ public class MenuBar extends JMenuBar{
 		}
 	}
 	
+	/**
+	 * Adds a menu item for each effect provider, named by the provider, so the listener 
+	 * can request its popup.
+	 * @param menu
+	 */
+	private void effectItemAdd(JMenu menu) {
+
+		for (EffectProvider provider : EffectController.getProviders()) {
+			JMenuItem item = new JMenuItem(provider.getDisplayName());
+			item.setName(provider.getName());
+			setHotKey(item, provider.getName());
+			item.addActionListener(listener);
+			menu.add(item);
+		}
+	}
+	
 	/**
 	 * This method adds the hot key to the item, by switching between the names. 
 	 * @param item
@@ -150,6 +167,12 @@ public class MenuBar extends JMenuBar{
 			KeyStroke ctrlShiftI = KeyStroke.getKeyStroke(KeyEvent.VK_I, M_SHORTCUT_MASK | InputEvent.SHIFT_DOWN_MASK);
 			item.setAccelerator(ctrlShiftI);
 			break;
+
+		case "export raw":
+			//shortcut CTRL+SHIFT+E
+			KeyStroke ctrlShiftE = KeyStroke.getKeyStroke(KeyEvent.VK_E, M_SHORTCUT_MASK | InputEvent.SHIFT_DOWN_MASK);
+			item.setAccelerator(ctrlShiftE);
+			break;
 				
 		case "show action history":
 			//shortcut CTRL+SHIFT+I
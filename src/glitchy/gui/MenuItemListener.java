@@ -4,6 +4,8 @@ import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import glitchy.core.effects.EffectController;
+
 
 /**
  * This class handles the events of the menu items
@@ -58,6 +60,10 @@ public class MenuItemListener implements ActionListener {
 		case "import raw":
 			gui.requestImportRawPopup();
 			break;
+			
+		case "export raw":
+			gui.requestExportRawPopup();
+			break;
 
 		case "exit":
 			gui.exit();
@@ -75,9 +81,6 @@ public class MenuItemListener implements ActionListener {
 			gui.zoom(0);
 			break;
 			
-		case "invert": case "bitshift": case "smear": case "sort": case "shuffle": case "reorder":
-			gui.requestPopup(item);
-			break;
 		case "about glitchy":
 			gui.requestAboutPopup();
 			break;
@@ -105,7 +108,11 @@ public class MenuItemListener implements ActionListener {
 		case "extract selection into new layer":
 			gui.cutSelection();
 			break;
-
+			
+		//Effects are named by their providers
+		default:
+			if(EffectController.getProvider(item) != null)
+				gui.requestPopup(item);
 		}
 	}
 	
@@ -376,7 +376,7 @@ public class Properties extends JPanel{
 			layerHeight.setText(Integer.toString(pixelStream.getHeight()));
 			layerPos.setText(Integer.toString(pixelStream.getPos()));
 			layerPos.setEnabled(true);
-			layerPixelCount.setText(Integer.toString(pixelStream.getPixels().length));
+			layerPixelCount.setText(Integer.toString(pixelStream.getLength()));
 			fillEffects(pixelStream.getEffects());
 		}
 		
@@ -8,6 +8,7 @@ import java.awt.FontMetrics;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 
+import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -39,6 +40,11 @@ public class Window extends JFrame{
 	 */
 	private JDialog loadingDialog;
 	
+	/**
+	 * The loadingbar's progressbar
+	 */
+	private JProgressBar progressBar;
+	
 	/**
 	 * Setting up the frame, panels and listeners
 	 * @param gui
@@ -190,6 +196,16 @@ public class Window extends JFrame{
 	 * @param message
 	 */
 	public void startLoading(String message) {
+		startLoading(message, null);
+	}
+	
+	/**
+	 * Shows a loadingbar with the given message. 
+	 * If cancel is given, the loadingbar shows progress, and has a cancel button.
+	 * @param message
+	 * @param cancel Called when the cancel button is pressed, or null for an indeterminate loadingbar.
+	 */
+	public void startLoading(String message, Runnable cancel) {
 		loadingDialog = new JDialog();
 		loadingDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
 		loadingDialog.setUndecorated(true);
@@ -202,15 +218,35 @@ public class Window extends JFrame{
 		loadingDialog.add(new JLabel(message,
 				JLabel.CENTER), BorderLayout.NORTH);
 
-		JProgressBar progressBar = new JProgressBar();
-		progressBar.setIndeterminate(true);
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setIndeterminate(cancel == null);
+		progressBar.setStringPainted(cancel != null);
 		loadingDialog.add(progressBar, BorderLayout.CENTER);
+		
+		if(cancel != null){
+			JButton cancelButton = new JButton("Cancel");
+			cancelButton.addActionListener(e -> {
+				cancelButton.setEnabled(false);
+				cancelButton.setText("Cancelling...");
+				cancel.run();
+			});
+			loadingDialog.add(cancelButton, BorderLayout.SOUTH);
+		}
 
 		loadingDialog.pack();		
 		loadingDialog.setLocationRelativeTo(this);
 		loadingDialog.setVisible(true);
 	}
 	
+	/**
+	 * Sets the loadingbar's progress
+	 * @param progress Progress, from 0 to 1.
+	 */
+	public void setProgress(double progress) {
+		if(progressBar != null)
+			progressBar.setValue((int) (progress * 100));
+	}
+	
 	/**
 	 * Disposes of the loadingbar
 	 */
@@ -5,9 +5,10 @@ import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 
-import glitchy.core.effects.Effect;
+import glitchy.core.effects.BitShiftEffect;
 import glitchy.core.imageProcessing.PixelStream;
 
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JSlider;
 import javax.swing.JTextField;
@@ -33,6 +34,11 @@ public class BitshiftPopup extends EffectPopup{
 	 */
 	private JTextField input;
 	
+	/**
+	 * How to shift: pixel by pixel, as one bitstream, or by bit-planes
+	 */
+	private JComboBox<String> mode;
+	
 	/**
 	 * Construcs the Bitshift popup
 	 * @param popupController
@@ -41,7 +47,7 @@ public class BitshiftPopup extends EffectPopup{
 	public BitshiftPopup(PopupController popupController, PixelStream pixelStream) {
 		super(popupController,pixelStream);
 		setTitle("BitShift");
-		setEffect(Effect.BITSHIFT);
+		setEffect(BitShiftEffect.NAME);
 		
 		if(pixelStream.hasAlpha())
 			numberOfBits = 32;
@@ -69,6 +75,11 @@ public class BitshiftPopup extends EffectPopup{
 		
 		input.addActionListener(arg0 -> slider.setValue(Integer.parseInt(input.getText())));
 		
+		//Bitstreams and bit-planes can be shifted further than the slider, by typing the number
+		mode = new JComboBox<>(new String[]{"Pixels", "Bitstream", "Bit-planes"});
+		mode.setFocusable(false);
+		
+		modifiersPanel.add(mode);
 		modifiersPanel.add(new JLabel("Number of bits"));
 		modifiersPanel.add(input);
 		modifiersPanel.add(slider);
@@ -77,10 +88,24 @@ public class BitshiftPopup extends EffectPopup{
 	@Override
 	protected int[] getModifiers() {
 
-		int[] modifiers = new int[2];
+		int[] modifiers = new int[3];
 		modifiers[0] = numberOfBits;
 		modifiers[1] = Integer.parseInt(input.getText());
 		
+		switch(mode.getSelectedIndex()){
+		case 1:
+			modifiers[2] = BitShiftEffect.BITSTREAM;
+			break;
+		case 2:
+			modifiers[2] = BitShiftEffect.BITPLANES;
+			break;
+		default:
+			modifiers[2] = BitShiftEffect.PIXELS;
+			
+			//Pixels can only be shifted by 0 up to their bits
+			modifiers[1] = Math.max(0, Math.min(modifiers[1], numberOfBits));
+		}
+		
 		if(modifiers[1]==0)
 			return null;
 		
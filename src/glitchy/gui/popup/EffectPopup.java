@@ -5,7 +5,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import glitchy.core.imageProcessing.PixelStream;
-import glitchy.core.effects.Effect;
 import glitchy.gui.HelpContent;
 
 import javax.swing.JButton;
@@ -20,9 +19,9 @@ public abstract class EffectPopup extends Popup {
 	private static final long serialVersionUID = -963637151067732236L;
 
 	/**
-	 * Effect
+	 * Name of the effect
 	 */
-	private Effect effect;
+	private String effect;
 	
 	/**
 	 * The reference to the popup controller
@@ -74,7 +73,7 @@ public abstract class EffectPopup extends Popup {
 		labelText += "<br><br>Selected layer: " + pixelStream.getTitle();
 		
 		int[] range = pixelStream.getSelectionRange();
-		if(range[0]==0 && range[1] == pixelStream.getPixels().length-1)
+		if(range[0]==0 && range[1] == pixelStream.getLength()-1)
 			labelText += "<br>Effect will be applied to the entire layer.";
 		else
 			labelText += "<br>Affected range: " + range[0] + " to " + range[1];
@@ -96,7 +95,7 @@ public abstract class EffectPopup extends Popup {
 	private void closeApply(){
 		super.close();
 
-		Effect effect = getEffect();
+		String effect = getEffect();
 		int[] modifiers = getModifiers();
 		
 		if(modifiers != null)
@@ -104,18 +103,18 @@ public abstract class EffectPopup extends Popup {
 	}
 	
 	/**
-	 * Gets the effect enum
+	 * Gets the name of the effect
 	 * @return
 	 */
-	private Effect getEffect() {
+	private String getEffect() {
 		return effect;
 	}
 	
 	/**
-	 * Sets the effect enum
+	 * Sets the name of the effect, as known by its EffectProvider
 	 * @param effect
 	 */
-	protected void setEffect(Effect effect) {
+	protected void setEffect(String effect) {
 		this.effect = effect;
 	}
 	
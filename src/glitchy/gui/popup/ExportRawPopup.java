@@ -0,0 +1,185 @@
+package glitchy.gui.popup;
+
+import java.awt.BorderLayout;
+
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import glitchy.core.io.RawFormat;
+import glitchy.gui.FileChooser;
+import glitchy.gui.HelpContent;
+
+/**
+ * With this popup, the user can export the selected layer, or the rendered image, as a raw file.
+ * @author Aksel
+ *
+ */
+@SuppressWarnings("serial")
+public class ExportRawPopup extends Popup{
+
+	/**
+	 * Choices of what to export.
+	 */
+	private static final String[] SOURCES = {"Selected layer", "Rendered image"};
+
+	/**
+	 * Reference to the PopupController
+	 */
+	PopupController popupController;
+
+	/**
+	 * A FileChooser
+	 */
+	FileChooser fileChooser;
+
+	/**
+	 * Whether to export the selected layer, or the rendered image.
+	 */
+	JComboBox<String> source;
+
+	/**
+	 * Format options.
+	 */
+	RawFormatPanel formatPanel;
+
+	/**
+	 * Path to file to be exported to.
+	 */
+	JTextField filePath;
+
+	/**
+	 * OK button, closes the popup and tells popupcontroller to begin export.
+	 */
+	JButton ok;
+
+	/**
+	 * Cancel button, closes the popup.
+	 */
+	JButton cancel;
+
+	/**
+	 * The last path that export raw dialog was on
+	 */
+	private String lastpath;
+
+	/**
+	 * Constructs the ExportRawPopup.
+	 * Takes in a filechooser to use for the path selection.
+	 * @param popupController
+	 * @param fileChooser
+	 * @param lastpath
+	 */
+	public ExportRawPopup(PopupController popupController, FileChooser fileChooser, String lastpath){
+		super();
+
+		this.fileChooser = fileChooser;
+		this.popupController = popupController;
+		this.lastpath = lastpath;
+
+		String description = "<html>";
+		description += new HelpContent().getHelpDescription("export raw");
+		description += "</html>";
+		JLabel descriptionLabel = new JLabel(description);
+
+		source = new JComboBox<>(SOURCES);
+		source.setFocusable(false);
+
+		JPanel sourcePanel = new JPanel();
+		sourcePanel.add(new JLabel("Export"));
+		sourcePanel.add(source);
+
+		formatPanel = new RawFormatPanel(false);
+
+		JPanel centerPanel = new JPanel();
+		centerPanel.setLayout(new BorderLayout());
+		centerPanel.add(sourcePanel,BorderLayout.NORTH);
+		centerPanel.add(formatPanel,BorderLayout.CENTER);
+		centerPanel.add(createFileChooserPanel(),BorderLayout.SOUTH);
+
+		add(descriptionLabel,BorderLayout.NORTH);
+		add(centerPanel,BorderLayout.CENTER);
+		add(createButtonPanel(),BorderLayout.SOUTH);
+
+		pack();
+	}
+
+	/**
+	 * Creates and returns a JPanel, containing the OK and Cancel buttons.
+	 * @return JPanel
+	 */
+	private JPanel createButtonPanel(){
+		JPanel panel = new JPanel();
+
+		ok = new JButton("OK");
+		ok.setEnabled(false);
+		ok.addActionListener(arg0 -> close());
+
+		cancel = new JButton("Cancel");
+		cancel.addActionListener(arg0 -> cancel());
+
+		panel.add(ok);
+		panel.add(cancel);
+
+		return panel;
+	}
+
+	/**
+	 * Creates and returns a JPanel containing the filepath textfield,
+	 * and the file selection button.
+	 * @return JPanel
+	 */
+	private JPanel createFileChooserPanel(){
+		JPanel panel = new JPanel();
+
+		JButton b = new JButton("Select file");
+		b.addActionListener(arg0 -> chooseFile());
+
+		filePath = new JTextField();
+		filePath.setColumns(25);
+		filePath.setEditable(false);
+		panel.add(filePath);
+		panel.add(b);
+		return panel;
+	}
+
+	/**
+	 * Opens the JFileChooser. If the user selects a file, the filepath textfield will
+	 * be set to the path, and the ok button will be enabled.
+	 */
+	private void chooseFile() {
+		String path = fileChooser.getPath("exportraw", this, lastpath, "Export Raw");
+
+		if(path!=null){
+			filePath.setText(path);
+			ok.setEnabled(true);
+		}
+	}
+
+	/**
+	 * Closes the popup, and tells the popupcontroller to begin exporting raw.
+	 */
+	protected void close(){
+		RawFormat format;
+
+		try {
+			format = formatPanel.getFormat();
+		} catch (IllegalArgumentException e) {
+			JOptionPane.showMessageDialog(this, e.getMessage(), "Invalid format", JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+
+		super.close();
+		popupController.exportRaw(filePath.getText(), format, source.getSelectedIndex() == 1);
+	}
+
+	/**
+	 * Closes the popup.
+	 */
+	private void cancel(){
+		super.close();
+	}
+}
@@ -1,16 +1,15 @@
 package glitchy.gui.popup;
 
 import java.awt.BorderLayout;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 
-import javax.swing.ButtonGroup;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.swing.JRadioButton;
 import javax.swing.JTextField;
 
+import glitchy.core.io.RawFormat;
 import glitchy.gui.FileChooser;
 import glitchy.gui.HelpContent;
 
@@ -33,14 +32,15 @@ public class ImportRawPopup extends Popup{
 	FileChooser fileChooser;
 
 	/**
-	 * Radiobutton, if selected file imported will be converted into an ARGB image.
+	 * Format options.
 	 */
-	JRadioButton argb;
+	RawFormatPanel formatPanel;
 	
 	/**
-	 * Radiobutton, if selected file imported will be converted into an RGB image.
+	 * If selected, the pixels are converted into memory at once, 
+	 * rather than read from the file as they are needed.
 	 */
-	JRadioButton rgb;
+	JCheckBox inMemory;
 	
 	/**
 	 * Path to file to be imported.
@@ -80,10 +80,16 @@ public class ImportRawPopup extends Popup{
 		description += "</html>"; 
 		JLabel descriptionLabel = new JLabel(description);
 
+		formatPanel = new RawFormatPanel(true);
+
+		inMemory = new JCheckBox("Load into memory");
+		inMemory.setFocusable(false);
+
 		JPanel centerPanel = new JPanel();
 		centerPanel.setLayout(new BorderLayout());
-		centerPanel.add(createRadioPanel(),BorderLayout.NORTH);
+		centerPanel.add(formatPanel,BorderLayout.NORTH);
 		centerPanel.add(createFileChooserPanel(),BorderLayout.CENTER);
+		centerPanel.add(inMemory,BorderLayout.SOUTH);
 
 		add(descriptionLabel,BorderLayout.NORTH);
 		add(centerPanel,BorderLayout.CENTER);		
@@ -112,35 +118,6 @@ public class ImportRawPopup extends Popup{
 		return panel;
 	}
 
-	/**
-	 * Creates and returns a JPanel containing the radiobuttons
-	 * @return
-	 */
-	private JPanel createRadioPanel(){
-		JPanel panel = new JPanel();
-
-		panel.add(new JLabel("Transparency: "));
-
-		ButtonGroup bGroup = new ButtonGroup();
-
-		argb = new JRadioButton();
-		argb.setText("Yes");
-		argb.setSelected(true);
-		argb.setFocusable(false);
-
-		rgb = new JRadioButton();
-		rgb.setText("No ");
-		rgb.setFocusable(false);
-
-		bGroup.add(argb);
-		bGroup.add(rgb);
-
-		panel.add(argb);
-		panel.add(rgb);
-
-		return panel;
-	}
-
 	/**
 	 * Creates and returns a JPanel containing the filepath textfield, 
 	 * and the file selection button.
@@ -177,9 +154,17 @@ public class ImportRawPopup extends Popup{
 	 * Closes the popup, and tells the popupcontroller to begin importing raw.
 	 */
 	protected void close(){
+		RawFormat format;
+
+		try {
+			format = formatPanel.getFormat();
+		} catch (IllegalArgumentException e) {
+			JOptionPane.showMessageDialog(this, e.getMessage(), "Invalid format", JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+
 		super.close();
-		boolean alpha = argb.isSelected();
-		popupController.importRaw(filePath.getText(),alpha);
+		popupController.importRaw(filePath.getText(),format,inMemory.isSelected());
 	}
 
 	/**
@@ -1,7 +1,7 @@
 package glitchy.gui.popup;
 
 import glitchy.core.imageProcessing.PixelStream;
-import glitchy.core.effects.Effect;
+import glitchy.core.effects.InvertEffect;
 /**
  * This the popup used for the invert effect
  * @author Aksel
@@ -18,7 +18,7 @@ public class InvertPopup extends CheckBoxPopup{
 	public InvertPopup(PopupController popupController, PixelStream pixelStream) {
 		super(popupController,pixelStream);
 		setTitle("Invert");
-		setEffect(Effect.INVERT);
+		setEffect(InvertEffect.NAME);
 		createEffectText("invert");
 		pack();
 	}
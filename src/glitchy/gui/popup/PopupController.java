@@ -1,7 +1,15 @@
 package glitchy.gui.popup;
 
-import glitchy.core.effects.Effect;
+import glitchy.core.effects.BitShiftEffect;
+import glitchy.core.effects.EffectController;
+import glitchy.core.effects.EffectProvider;
+import glitchy.core.effects.InvertEffect;
+import glitchy.core.effects.ReorderEffect;
+import glitchy.core.effects.ShuffleEffect;
+import glitchy.core.effects.SmearEffect;
+import glitchy.core.effects.SortEffect;
 import glitchy.core.imageProcessing.PixelStream;
+import glitchy.core.io.RawFormat;
 import glitchy.gui.FileChooser;
 import glitchy.gui.GuiController;
 import glitchy.gui.Window;
@@ -43,10 +51,10 @@ public class PopupController {
 	/**
 	 * Performs a requested effect with the modifiers from the popup
 	 * @param pixelStream
-	 * @param effect
+	 * @param effect Name of the effect
 	 * @param modifiers
 	 */
-	protected void requestEffect(PixelStream pixelStream, Effect effect, int[] modifiers) {
+	protected void requestEffect(PixelStream pixelStream, String effect, int[] modifiers) {
 		guiController.requestEffect(pixelStream, effect, modifiers);
 	}
 	
@@ -61,10 +69,31 @@ public class PopupController {
 	/**
 	 * Request an import of raw file with the path selected in the popup
 	 * @param path
-	 * @param alpha
+	 * @param format
+	 * @param inMemory Whether to load the pixels into memory, rather than reading them from the file
 	 */
-	public void importRaw(String path, boolean alpha) {
-		guiController.importRaw(path,alpha);
+	public void importRaw(String path, RawFormat format, boolean inMemory) {
+		guiController.importRaw(path,format,inMemory);
+	}
+	
+	/**
+	 * Tells the guicontroller to export a raw to the given path
+	 * @param path
+	 * @param format
+	 * @param composite
+	 */
+	public void exportRaw(String path, RawFormat format, boolean composite) {
+		guiController.exportRaw(path, format, composite);
+	}
+	
+	/**
+	 * opens an export raw popup
+	 * @param fileChooser
+	 * @param lastpath
+	 */
+	public void requestExportRawPopup(FileChooser fileChooser, String lastpath){
+		ExportRawPopup p = new ExportRawPopup(this, fileChooser, lastpath);
+		p.popup(null);
 	}
 	
 	/**
@@ -77,7 +106,8 @@ public class PopupController {
 	}
 	
 	/**
-	 * Request a certain popup based on a popup name
+	 * Request a certain popup based on a popup name. 
+	 * Effects without a popup of their own get a ProviderPopup.
 	 * @param popupName
 	 * @param pixelStream
 	 * @param window
@@ -87,29 +117,35 @@ public class PopupController {
 		EffectPopup eP = null;
 
 		switch(popupName){
-		case "invert":
+		case InvertEffect.NAME:
 			eP = new InvertPopup(this, pixelStream);
 			break;
 			
-		case "bitshift":
+		case BitShiftEffect.NAME:
 			eP = new BitshiftPopup(this, pixelStream);
 			break;
 			
-		case "smear":
+		case SmearEffect.NAME:
 			eP = new SmearPopup(this, pixelStream);
 			break;
 		
-		case "sort":
+		case SortEffect.NAME:
 			eP = new SortPopup(this, pixelStream);
 			break;
 			
-		case "shuffle":
+		case ShuffleEffect.NAME:
 			eP = new ShufflePopup(this, pixelStream);
 			break;
 			
-		case "reorder":
+		case ReorderEffect.NAME:
 			eP = new ReorderPopup(this, pixelStream);
 			break;
+			
+		default:
+			EffectProvider provider = EffectController.getProvider(popupName);
+			
+			if(provider != null)
+				eP = new ProviderPopup(this, pixelStream, provider);
 		}
 
 		if (eP != null) {
@@ -0,0 +1,72 @@
+package glitchy.gui.popup;
+
+import glitchy.core.effects.EffectProvider;
+import glitchy.core.imageProcessing.PixelStream;
+
+import java.awt.GridLayout;
+
+import javax.swing.JLabel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+/**
+ * The popup used for effects that have no popup of their own,
+ * e.g. effects added by other EffectProviders.
+ * Each of the provider's modifiers is entered as a number.
+ * @author Aksel
+ *
+ */
+public class ProviderPopup extends EffectPopup{
+	private static final long serialVersionUID = 3470658264118293071L;
+
+	/**
+	 * The provider of the effect
+	 */
+	private transient EffectProvider provider;
+
+	/**
+	 * Spinners for the modifiers, in order
+	 */
+	private JSpinner[] modifiers;
+
+	/**
+	 * Constructs the ProviderPopup
+	 * @param popupController
+	 * @param pixelStream
+	 * @param provider
+	 */
+	protected ProviderPopup(PopupController popupController, PixelStream pixelStream, EffectProvider provider) {
+		super(popupController, pixelStream);
+		this.provider = provider;
+
+		setTitle(provider.getDisplayName());
+		setEffect(provider.getName());
+		populateModifiersPanel();
+		createEffectText(provider.getName());
+		pack();
+	}
+
+	@Override
+	protected void populateModifiersPanel() {
+		String[] names = provider.getModifierNames();
+
+		modifiersPanel.setLayout(new GridLayout(names.length, 2));
+		modifiers = new JSpinner[names.length];
+
+		for(int i = 0; i < names.length; i++){
+			modifiers[i] = new JSpinner(new SpinnerNumberModel(0, Integer.MIN_VALUE, Integer.MAX_VALUE, 1));
+
+			modifiersPanel.add(new JLabel(names[i]));
+			modifiersPanel.add(modifiers[i]);
+		}
+	}
+
+	@Override
+	protected int[] getModifiers() {
+		int[] values = new int[modifiers.length];
+
+		for(int i = 0; i < modifiers.length; i++)
+			values[i] = (int) modifiers[i].getValue();
+
+		return values;
+	}
+}
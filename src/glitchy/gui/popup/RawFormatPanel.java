@@ -0,0 +1,125 @@
+package glitchy.gui.popup;
+
+import java.awt.GridLayout;
+
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+
+import glitchy.core.io.RawFormat;
+import glitchy.core.io.RawFormat.Layout;
+
+/**
+ * Lets the user describe how pixels are laid out in a raw file.
+ * Used when importing and exporting raw files.
+ * @author Aksel
+ *
+ */
+@SuppressWarnings("serial")
+public class RawFormatPanel extends JPanel{
+
+	/**
+	 * Channel layout of the file's pixels.
+	 */
+	JComboBox<Layout> layout;
+
+	/**
+	 * If selected, each channel is stored in its own plane.
+	 */
+	JCheckBox planar;
+
+	/**
+	 * If selected, 16-bit samples are little-endian.
+	 */
+	JCheckBox littleEndian;
+
+	/**
+	 * Bytes skipped at the start of the file.
+	 */
+	JSpinner offset;
+
+	/**
+	 * Bytes read after the offset. 0 for the rest of the file. Null if not shown.
+	 */
+	JSpinner length;
+
+	/**
+	 * Bytes from one pixel to the next. 0 for tightly packed pixels.
+	 */
+	JSpinner stride;
+
+	/**
+	 * Constructs the RawFormatPanel.
+	 * @param showLength Whether to let the user pick the length of the slice.
+	 * Only applies when importing, as an export's length is given by its pixels.
+	 */
+	public RawFormatPanel(boolean showLength){
+		super(new GridLayout(showLength ? 5 : 4, 2));
+
+		layout = new JComboBox<>(Layout.values());
+		layout.setFocusable(false);
+
+		planar = new JCheckBox("Planar");
+		planar.setFocusable(false);
+
+		littleEndian = new JCheckBox("Little-endian");
+		littleEndian.setFocusable(false);
+		littleEndian.setEnabled(false);
+
+		offset = new JSpinner(new SpinnerNumberModel(Long.valueOf(0), Long.valueOf(0), Long.valueOf(Long.MAX_VALUE), Long.valueOf(1)));
+		stride = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 1));
+
+		//Only some options apply to some layouts
+		layout.addActionListener(e -> updateOptions());
+		planar.addActionListener(e -> updateOptions());
+
+		add(new JLabel("Format"));
+		add(layout);
+		add(planar);
+		add(littleEndian);
+		add(new JLabel("Offset, in bytes"));
+		add(offset);
+
+		if(showLength){
+			length = new JSpinner(new SpinnerNumberModel(Long.valueOf(0), Long.valueOf(0), Long.valueOf(Long.MAX_VALUE), Long.valueOf(1)));
+
+			add(new JLabel("Length, in bytes (0 = to end)"));
+			add(length);
+		}
+
+		add(new JLabel("Stride, in bytes (0 = packed)"));
+		add(stride);
+	}
+
+	/**
+	 * Enables the options that apply to the selected layout.
+	 */
+	private void updateOptions(){
+		Layout l = (Layout) layout.getSelectedItem();
+
+		planar.setEnabled(l != Layout.RGB565);
+		if(l == Layout.RGB565)
+			planar.setSelected(false);
+
+		littleEndian.setEnabled(l.getSampleBytes() == 2);
+		stride.setEnabled(!planar.isSelected());
+	}
+
+	/**
+	 * Returns the format described by the options.
+	 * @return RawFormat
+	 * @throws IllegalArgumentException If the options do not describe a valid format.
+	 */
+	public RawFormat getFormat(){
+		return new RawFormat(
+				(Layout) layout.getSelectedItem(),
+				planar.isSelected(),
+				littleEndian.isSelected(),
+				(long) offset.getValue(),
+				length == null ? 0 : (long) length.getValue(),
+				(int) stride.getValue());
+	}
+}
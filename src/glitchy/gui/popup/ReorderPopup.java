@@ -1,7 +1,7 @@
 package glitchy.gui.popup;
 
 import glitchy.core.imageProcessing.PixelStream;
-import glitchy.core.effects.Effect;
+import glitchy.core.effects.ReorderEffect;
 /**
  * This is the popup used for the reordering effect
  * @author Rasmus and Aksel
@@ -23,7 +23,7 @@ public class ReorderPopup extends EffectPopup{
 	public ReorderPopup(PopupController popupController, PixelStream pixelStream) {
 		super(popupController,pixelStream);
 		setTitle("Reorder");
-		setEffect(Effect.REORDER);
+		setEffect(ReorderEffect.NAME);
 		populateModifiersPanel();
 		createEffectText("reorder");
 		
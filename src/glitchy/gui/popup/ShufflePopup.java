@@ -1,7 +1,7 @@
 package glitchy.gui.popup;
 
 import glitchy.core.imageProcessing.PixelStream;
-import glitchy.core.effects.Effect;
+import glitchy.core.effects.ShuffleEffect;
 /**
  * This is the popup used for the Shuffle effect
  * @author Aksel
@@ -18,7 +18,7 @@ public class ShufflePopup extends CheckBoxPopup{
 	public ShufflePopup(PopupController popupController, PixelStream pixelStream) {
 		super(popupController,pixelStream);
 		setTitle("Shuffle");
-		setEffect(Effect.SHUFFLE);
+		setEffect(ShuffleEffect.NAME);
 		createEffectText("shuffle");
 		createPixelOrChannelCheckBox("Shuffle");
 		pack();
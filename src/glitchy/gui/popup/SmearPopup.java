@@ -1,6 +1,6 @@
 package glitchy.gui.popup;
 
-import glitchy.core.effects.Effect;
+import glitchy.core.effects.SmearEffect;
 import glitchy.core.imageProcessing.PixelStream;
 
 import java.awt.BorderLayout;
@@ -10,6 +10,7 @@ import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
@@ -33,10 +34,15 @@ public class SmearPopup extends EffectPopup{
 	private JTextField inputLength, inputIntensity;
 	
 	/**
-	 * A label with a warning - shown when above 200 length
+	 * A label with a warning - shown when above 200 length, with the classic smear
 	 */
 	private JLabel warning;
 	
+	/**
+	 * Checkbox for the classic smear, whose cost grows with the length
+	 */
+	private JCheckBox classic;
+	
 	/**
 	 * Constructs Smear popup
 	 * @param popupController
@@ -46,7 +52,7 @@ public class SmearPopup extends EffectPopup{
 		super(popupController, pixelStream);
 
 		setTitle("Smear");
-		setEffect(Effect.SMEAR);
+		setEffect(SmearEffect.NAME);
 		populateModifiersPanel();
 		createEffectText("smear");
 		pack();
@@ -65,7 +71,13 @@ public class SmearPopup extends EffectPopup{
 		bottom.setLayout(new BorderLayout());
 		
 		bottom.add(createLengthSlider(), BorderLayout.NORTH);	
-		bottom.add(createIntensitySlider(), BorderLayout.SOUTH);
+		bottom.add(createIntensitySlider(), BorderLayout.CENTER);
+		
+		classic = new JCheckBox("Classic smear");
+		classic.setFocusable(false);
+		classic.addChangeListener(arg0 -> updateWarning());
+		bottom.add(classic, BorderLayout.SOUTH);
+		
 		modifiersPanel.add(bottom, BorderLayout.CENTER);
 	}
 	
@@ -74,7 +86,7 @@ public class SmearPopup extends EffectPopup{
 	 * @return
 	 */
 	private JPanel createLengthSlider() {
-		int maxLength = 300;
+		int maxLength = 1000;
 		
 		JPanel content = new JPanel();
 		lengthSlider = new JSlider(0, maxLength, 1);
@@ -82,8 +94,8 @@ public class SmearPopup extends EffectPopup{
 		inputLength.setText("100");
 		lengthSlider.setValue(100);
 		
-		lengthSlider.setMajorTickSpacing(50);
-		lengthSlider.setMinorTickSpacing(5);
+		lengthSlider.setMajorTickSpacing(200);
+		lengthSlider.setMinorTickSpacing(10);
 		lengthSlider.setPaintTicks(true);
 		lengthSlider.setPaintLabels(true);
 		lengthSlider.setSnapToTicks(true);
@@ -92,15 +104,14 @@ public class SmearPopup extends EffectPopup{
 		
 		lengthSlider.addPropertyChangeListener(arg0 -> {
             inputLength.setText(Integer.toString(lengthSlider.getValue()));
-            if (lengthSlider.getValue() >= 200) {
-                warning.setVisible(true);
-            } else {
-                warning.setVisible(false);
-            }
-
+            updateWarning();
         });
 		
-		inputLength.addActionListener(arg0 -> lengthSlider.setValue(Integer.parseInt(inputLength.getText())));
+		//Lengths beyond the slider can be typed in
+		inputLength.addActionListener(arg0 -> {
+			lengthSlider.setValue(Integer.parseInt(inputLength.getText()));
+			updateWarning();
+		});
 		
 		content.add(new JLabel("Length"));	
 		content.add(inputLength);
@@ -109,6 +120,20 @@ public class SmearPopup extends EffectPopup{
 		return content;
 	}
 	
+	/**
+	 * Shows the warning if the classic smear is selected, with a length of 200 or more
+	 */
+	private void updateWarning() {
+		int length;
+		try {
+			length = Integer.parseInt(inputLength.getText());
+		} catch (NumberFormatException e) {
+			length = lengthSlider.getValue();
+		}
+		
+		warning.setVisible(classic != null && classic.isSelected() && length >= 200);
+	}
+	
 	/**
 	 * Creates and adds the intensity slider
 	 * @return
@@ -143,9 +168,10 @@ public class SmearPopup extends EffectPopup{
 	@Override
 	protected int[] getModifiers() {
 
-		int[] modifiers = new int[2];
+		int[] modifiers = new int[3];
 		modifiers[0] = Integer.parseInt(inputLength.getText());
 		modifiers[1] = Integer.parseInt(inputIntensity.getText()) / 10;
+		modifiers[2] = classic.isSelected() ? SmearEffect.CLASSIC : SmearEffect.WINDOWED;
 		
 		return modifiers;
 	}
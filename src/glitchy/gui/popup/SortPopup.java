@@ -1,7 +1,16 @@
 package glitchy.gui.popup;
 
 import glitchy.core.imageProcessing.PixelStream;
-import glitchy.core.effects.Effect;
+import glitchy.core.effects.SortEffect;
+
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 /**
  * Pop up used for the sort effect
  * @author Aksel
@@ -10,6 +19,16 @@ import glitchy.core.effects.Effect;
 public class SortPopup extends CheckBoxPopup{
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * What to sort by. Value sorts by pixel or channel values, the others by key.
+	 */
+	private JComboBox<String> sortBy;
+	
+	/**
+	 * Thresholds. Only intervals of pixels whose keys are between them are sorted.
+	 */
+	private JSpinner low, high;
+	
 	/**
 	 * Constructs the SortPopup
 	 * @param popupController
@@ -18,11 +37,62 @@ public class SortPopup extends CheckBoxPopup{
 	public SortPopup(PopupController popupController, PixelStream pixelStream) {
 		super(popupController,pixelStream);
 		setTitle("Sort");
-		setEffect(Effect.SORT);
+		setEffect(SortEffect.NAME);
 		createEffectText("sort");
 		createPixelOrChannelCheckBox("Sort");
+		createSortByPanel();
 		pack();
 	}
 	
+	/**
+	 * Creates the panel for sorting by luminance, hue or saturation, with thresholds
+	 */
+	private void createSortByPanel(){
+		sortBy = new JComboBox<>(new String[]{"Value", "Luminance", "Hue", "Saturation"});
+		sortBy.setFocusable(false);
+		
+		low = new JSpinner(new SpinnerNumberModel(0, 0, 255, 1));
+		high = new JSpinner(new SpinnerNumberModel(255, 0, 255, 1));
+		low.setEnabled(false);
+		high.setEnabled(false);
+		
+		sortBy.addActionListener(e -> {
+			boolean byKey = sortBy.getSelectedIndex() > 0;
+			
+			low.setEnabled(byKey);
+			high.setEnabled(byKey);
+			pixelOrChannel.setEnabled(!byKey);
+			
+			boolean channels = !byKey && !pixelOrChannel.isSelected();
+			if(pixelStream.hasAlpha())
+				a.setEnabled(channels);
+			r.setEnabled(channels);
+			g.setEnabled(channels);
+			b.setEnabled(channels);
+		});
+		
+		JPanel panel = new JPanel(new GridLayout(3, 2));
+		panel.add(new JLabel("Sort by"));
+		panel.add(sortBy);
+		panel.add(new JLabel("Low threshold"));
+		panel.add(low);
+		panel.add(new JLabel("High threshold"));
+		panel.add(high);
+		
+		add(panel, BorderLayout.EAST);
+	}
 	
-}
\ No newline at end of file
+	@Override
+	protected int[] getModifiers() {
+		
+		//User wants pixels sorted by luminance, hue or saturation
+		if(sortBy != null && sortBy.getSelectedIndex() > 0){
+			int l = (int) low.getValue();
+			int h = (int) high.getValue();
+			
+			return new int[]{SortEffect.SORT_BY_KEY, sortBy.getSelectedIndex() - 1, Math.min(l, h), Math.max(l, h)};
+		}
+		
+		return super.getModifiers();
+	}
+}